@@ -0,0 +1,275 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+
+/* AnnealingSolver is a simulated annealing local search for the grids where a complete
+ * search runs out of time, 25x25 and up.  It never works on a partial grid:
+ * 1. Every box is filled with a permutation of the values it is missing, where every
+ *    cell gets one of its candidates: a matching of the cells to the values, found by
+ *    augmenting paths.  A box without one proves that the grid has no solution
+ * 2. The cost is the number of repeated values in the rows and columns (the boxes
+ *    never have any), kept up to date by counters as the values move
+ * 3. A move swaps two cells of a box when each can take the value of the other.  It
+ *    is kept if it doesn't raise the cost, or with probability exp(-delta/T).  The
+ *    first cell is drawn again, up to focus times, until its value is repeated in its
+ *    row or column: on a grid with many givens most cells are settled early and the
+ *    moves that touch them are wasted (a 36x36 with 70% empty cells takes 1.2s with
+ *    focus 16 and 21s without), on an empty grid it costs some speed (6s to 9s on 64x64)
+ * 4. The temperature starts at the spread of the cost changes of random moves, and is
+ *    multiplied by cooling after every level of moves (as many as the swaps of the
+ *    grid).  After reheat levels without a new best cost the boxes are filled again
+ *    from scratch and the temperature goes back up, a restart
+ * The moves are drawn from the random generator handed in, so a run is repeated by
+ * its seed, and they are charged to the budget as search nodes.  Like randomGuess it
+ * has no end on a grid without solution unless a box has no matching: only the budget
+ * or cancelled stop it then. */
+class AnnealingSolver
+{
+	final int SIZE, N, cells;
+
+	// Temperature factor applied after every level, and levels without a new best before a restart
+	double cooling = 0.99;
+	int reheat = 50;
+
+	// Draws of the first cell of a move looking for one with a repeated value, 0 for uniform moves
+	int focus = 16;
+
+	// Moves tried and restarts done by the last solve
+	long moves;
+	int restarts;
+
+	// Set from any thread to stop the search, and the deadline and node limit of the search, null for none
+	AtomicBoolean cancelled = new AtomicBoolean();
+	Budget budget;
+	private int ticks;
+
+	private final Random random;
+	private final int[] units;
+
+	// Value of every cell, and whether it was given (or placed by SmartSolve) and never moves
+	private final int[] value;
+	private final boolean[] fixed;
+
+	// Values allowed in every free cell, allowed[cell*N+d] for value d+1
+	private final boolean[] allowed;
+
+	// Free cells of every box
+	private final int[][] free;
+
+	// Boxes with two free cells or more, the only ones a move can be drawn from
+	private int[] movable;
+	private int movableCount;
+
+	// Number of cells holding every value in every row and column, indexed by row*N+d and col*N+d
+	private final int[] rowCount, colCount;
+	private int cost;
+
+	// Probability of keeping a move that raises the cost by delta, for the current temperature
+	private final double[] accept = new double[5];
+
+	// grid holds the fixed values and zeros, allowed the candidates of the empty cells
+	public AnnealingSolver( int size, int[][] grid, boolean[] allowed, Random random )
+	{
+		SIZE = size;
+		N = size*size;
+		cells = N*N;
+		units = Geometry.of(size).units;
+		this.allowed = allowed;
+		this.random = random;
+		value = new int[cells];
+		fixed = new boolean[cells];
+		for (int cell=0; cell<cells; cell++) {
+			value[cell] = grid[cell/N][cell%N];
+			fixed[cell] = value[cell]>0;
+		}
+		free = new int[N][];
+		movable = new int[N];
+		for (int b=0; b<N; b++) {
+			int n = 0;
+			int[] list = new int[N];
+			for (int i=(2*N+b)*N, end=i+N; i<end; i++)
+				if (!fixed[units[i]]) list[n++] = units[i];
+			free[b] = Arrays.copyOf(list, n);
+			if (n>=2) movable[movableCount++] = b;
+		}
+		rowCount = new int[N*N];
+		colCount = new int[N*N];
+	}
+
+	// Search until the cost reaches zero, returns false if a box can't be filled or the search was stopped
+	// On success the grid holds the solution
+	public boolean solve(int[][] grid){
+		moves = 0;
+		restarts = 0;
+		if (!fill()) return false;
+		// Pairs of free cells of the same box, the moves of one level
+		long level = 0;
+		for (int b=0; b<N; b++) level += (long) free[b].length * (free[b].length-1) / 2;
+		double start = startTemperature();
+		double temperature = start;
+		int best = cost, stale = 0;
+		setTemperature(temperature);
+		while (cost>0) {
+			for (long i=0; i<level && cost>0; i++) {
+				if (stopped()) return false;
+				move();
+			}
+			if (cost < best) {
+				best = cost;
+				stale = 0;
+			}
+			else if (++stale >= reheat) {
+				restarts++;
+				if (!fill()) return false;
+				best = cost;
+				stale = 0;
+				temperature = start;
+			}
+			temperature *= cooling;
+			setTemperature(temperature);
+		}
+		for (int cell=0; cell<cells; cell++) grid[cell/N][cell%N] = value[cell];
+		return true;
+	}
+
+	// True if another thread stopped the search or the budget ran out, the budget is only charged every interval moves
+	private boolean stopped(){
+		if (cancelled.get()) return true;
+		if (budget==null) return false;
+		if ((++ticks & budget.mask) == 0) return budget.spend();
+		return budget.exhausted;
+	}
+
+	private void setTemperature(double temperature){
+		for (int delta=1; delta<accept.length; delta++)
+			accept[delta] = Math.exp(-delta/temperature);
+	}
+
+	// Fill the free cells of every box with a random matching of its missing values, and count the cost
+	private boolean fill(){
+		int[] values = new int[N], owner = new int[N+1];
+		boolean[] seen = new boolean[N+1];
+		for (int b=0; b<N; b++) {
+			int[] cellsOf = free[b];
+			if (cellsOf.length==0) continue;
+			// Missing values of the box, in a random order so that every fill is a different one
+			boolean[] present = new boolean[N+1];
+			for (int i=(2*N+b)*N, end=i+N; i<end; i++)
+				if (fixed[units[i]]) present[value[units[i]]] = true;
+			int n = 0;
+			for (int k=1; k<=N; k++)
+				if (!present[k]) values[n++] = k;
+			for (int i=n-1; i>0; i--) {
+				int j = random.nextInt(i+1);
+				int t = values[i]; values[i] = values[j]; values[j] = t;
+			}
+			Arrays.fill(owner, -1);
+			for (int c=0; c<cellsOf.length; c++) {
+				Arrays.fill(seen, false);
+				if (!augment(cellsOf, c, values, n, owner, seen)) return false;
+			}
+			for (int k=1; k<=N; k++)
+				if (owner[k]>=0) value[cellsOf[owner[k]]] = k;
+		}
+		Arrays.fill(rowCount, 0);
+		Arrays.fill(colCount, 0);
+		for (int cell=0; cell<cells; cell++) {
+			rowCount[(cell/N)*N + value[cell]-1]++;
+			colCount[(cell%N)*N + value[cell]-1]++;
+		}
+		cost = 0;
+		for (int i=0; i<N*N; i++) cost += Math.max(0, rowCount[i]-1) + Math.max(0, colCount[i]-1);
+		return true;
+	}
+
+	// Find a value for the c-th free cell of a box, moving the values of the cells matched before if needed
+	private boolean augment(int[] cellsOf, int c, int[] values, int n, int[] owner, boolean[] seen){
+		int cell = cellsOf[c];
+		for (int i=0; i<n; i++) {
+			int k = values[i];
+			if (seen[k] || !allowed[cell*N+k-1]) continue;
+			seen[k] = true;
+			if (owner[k]<0 || augment(cellsOf, owner[k], values, n, owner, seen)) {
+				owner[k] = c;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Spread of the cost changes of random moves from the current fill, none of them kept
+	private double startTemperature(){
+		int samples = 200;
+		double sum = 0, squares = 0;
+		int taken = 0;
+		for (int i=0; i<samples*10 && taken<samples; i++) {
+			int[] pair = drawPair();
+			if (pair==null) break;
+			int delta = swap(pair[0], pair[1]);
+			swap(pair[0], pair[1]);
+			sum += delta;
+			squares += (double) delta*delta;
+			taken++;
+		}
+		if (taken<2) return 1;
+		double mean = sum/taken;
+		return Math.max(0.1, Math.sqrt(Math.max(0, squares/taken - mean*mean)));
+	}
+
+	// Two free cells of the same box that can take each other's value, or null if the draw failed
+	private int[] drawPair(){
+		if (movableCount==0) return null;
+		int[] cellsOf = free[movable[random.nextInt(movableCount)]];
+		int i = random.nextInt(cellsOf.length), j = random.nextInt(cellsOf.length-1);
+		if (j>=i) j++;
+		int a = cellsOf[i], b = cellsOf[j];
+		if (!allowed[a*N+value[b]-1] || !allowed[b*N+value[a]-1]) return null;
+		return new int[] { a, b };
+	}
+
+	// Try one swap, keep it or put the values back
+	private void move(){
+		moves++;
+		if (movableCount==0) return;
+		int[] cellsOf = free[movable[random.nextInt(movableCount)]];
+		int i = random.nextInt(cellsOf.length);
+		for (int t=0; t<focus && !repeated(cellsOf[i]); t++) {
+			cellsOf = free[movable[random.nextInt(movableCount)]];
+			i = random.nextInt(cellsOf.length);
+		}
+		int j = random.nextInt(cellsOf.length-1);
+		if (j>=i) j++;
+		int a = cellsOf[i], b = cellsOf[j];
+		if (!allowed[a*N+value[b]-1] || !allowed[b*N+value[a]-1]) return;
+		int delta = swap(a, b);
+		if (delta<=0 || random.nextDouble() < accept[Math.min(delta, accept.length-1)]) cost += delta;
+		else swap(a, b);
+	}
+
+	// True if the value of a cell is also in another cell of its row or column
+	private boolean repeated(int cell){
+		int k = value[cell]-1;
+		return rowCount[(cell/N)*N + k] > 1 || colCount[(cell%N)*N + k] > 1;
+	}
+
+	// Exchange the values of two cells and return the change of cost
+	private int swap(int a, int b){
+		int va = value[a], vb = value[b];
+		int delta = leave(a, va) + leave(b, vb);
+		value[a] = vb;
+		value[b] = va;
+		return delta + enter(a, vb) + enter(b, va);
+	}
+
+	// A value leaves a cell: one repeat less in its row and column if it was there twice or more
+	private int leave(int cell, int k){
+		int r = (cell/N)*N + k-1, c = (cell%N)*N + k-1;
+		return (--rowCount[r] >= 1 ? -1 : 0) + (--colCount[c] >= 1 ? -1 : 0);
+	}
+
+	// A value enters a cell: one repeat more in its row and column if it was there already
+	private int enter(int cell, int k){
+		int r = (cell/N)*N + k-1, c = (cell%N)*N + k-1;
+		return (rowCount[r]++ >= 1 ? 1 : 0) + (colCount[c]++ >= 1 ? 1 : 0);
+	}
+}
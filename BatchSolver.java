@@ -0,0 +1,190 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+
+/* BatchSolver solves a stream of puzzles in one JVM.  The input can mix the usual
+ * format (the size followed by the grid, repeated) and one line puzzles, see
+ * PuzzleReader.  Puzzles are solved on a fixed pool of workers, and a bounded window
+ * of pending results keeps the output in the input order: the reader blocks on the
+ * oldest result once the window is full.  One line puzzles are answered on one line,
+ * the others with the usual grid.  The workers don't format anything: each place of the
+ * window has a slot, reused from one puzzle to the next, where a worker copies its
+ * outcome, and the reading thread writes the slot to a PuzzleWriter when its turn
+ * comes.  A batch builds no text per result and the output leaves in 64KB writes. */
+class BatchSolver
+{
+	final int threads;
+	final String engine;
+	final int rules;
+
+	// Puzzles solved, and puzzles without a solution or stopped before the end
+	int solvedCount, failedCount;
+
+	// Append the counters and timings of every solve as a JSON line after its result
+	boolean stats;
+
+	// Solutions shared by all the workers, null if not used
+	SolutionCache cache;
+
+	// Count the solutions of every puzzle up to this limit instead of solving it, 0 to solve
+	int countLimit;
+
+	// Time and search nodes allowed to every puzzle, 0 for no limit
+	long timeoutMillis, maxNodes;
+
+	// Puzzles stopped by their budget, counted in failedCount too
+	int timedOutCount;
+
+	public BatchSolver( int threads, String engine, int rules )
+	{
+		this.threads = threads;
+		this.engine = engine;
+		this.rules = rules;
+	}
+
+	// Outcome of one puzzle, copied by a worker and written out by the reading thread, or by a connection of SolveServer
+	static class Slot
+	{
+		int size;
+		boolean oneLine;
+
+		// Outcome of a solve, null for a count
+		SolveResult.Status status;
+
+		// Solution of a solved puzzle, the rows are kept while the puzzles keep the same size
+		int[][] grid;
+
+		// Cells filled and nodes searched by a solve stopped by its budget
+		int filled;
+		long nodes;
+
+		// Solutions found by a count, and whether its budget stopped it first
+		int count;
+		boolean timedOut;
+
+		// JSON line of the counters, null when they are not printed
+		String stats;
+	}
+
+	// Solve every puzzle of the input and write the results to out in the same order
+	public void run(PuzzleReader in, PuzzleWriter out) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Slot>> pending = new ArrayDeque<Future<Slot>>();
+		int window = 4*threads;
+		// The oldest result is written before a new puzzle is submitted, so the slot it takes is free again
+		Slot[] slots = new Slot[window];
+		for (int i=0; i<window; i++) slots[i] = new Slot();
+		long submitted = 0;
+		long startTime = System.nanoTime();
+		try {
+			PuzzleReader.Puzzle puzzle;
+			while ((puzzle = in.next()) != null) {
+				if (pending.size() >= window) write(pending.poll().get(), out);
+				final PuzzleReader.Puzzle p = puzzle;
+				final Slot slot = slots[(int) (submitted++ % window)];
+				pending.add(pool.submit(new Callable<Slot>() {
+					public Slot call(){
+						solve(p, slot);
+						return slot;
+					}
+				}));
+			}
+			while (!pending.isEmpty()) write(pending.poll().get(), out);
+			out.flush();
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - startTime)/1e9;
+		int total = solvedCount + failedCount;
+		System.err.println((countLimit>0 ? "Unique: " : "Solved ") + solvedCount + " of " + total + " puzzles in " + seconds + "s ("
+			+ (long) (total/seconds) + " puzzles/sec)" + (timedOutCount>0 ? ", " + timedOutCount + " timed out" : ""));
+	}
+
+	// Every worker keeps one Sudoku and reuses it while the puzzles keep the same size
+	private final ThreadLocal<Sudoku> solvers = new ThreadLocal<Sudoku>();
+
+	// Solve one puzzle on a worker thread and copy the outcome to the slot
+	void solve(PuzzleReader.Puzzle p, Slot slot){
+		Sudoku s = solvers.get();
+		if (s==null || s.SIZE!=p.size) {
+			s = new Sudoku(p.size);
+			s.engine = engine;
+			s.rules = rules;
+			s.threads = 1;
+			if (stats) s.stats = new SolverStats();
+			s.cache = cache;
+			s.timeoutMillis = timeoutMillis;
+			s.maxNodes = maxNodes;
+			solvers.set(s);
+		}
+		s.reset(p.grid);
+		slot.size = p.size;
+		slot.oneLine = p.oneLine;
+		if (countLimit>0) count(s, slot);
+		else {
+			boolean solved = s.solveWithEngine();
+			slot.status = solved ? SolveResult.Status.SOLVED : s.timedOut() ? SolveResult.Status.TIMEOUT : SolveResult.Status.UNSAT;
+			if (solved) {
+				int N = s.N;
+				if (slot.grid==null || slot.grid.length!=N) slot.grid = new int[N][N];
+				for (int r=0; r<N; r++) System.arraycopy(s.Grid[r], 0, slot.grid[r], 0, N);
+			}
+			else if (slot.status == SolveResult.Status.TIMEOUT) {
+				slot.filled = s.filledCells();
+				slot.nodes = s.budget!=null ? s.budget.spent() : 0;
+			}
+			synchronized (this) {
+				if (solved) solvedCount++;
+				else failedCount++;
+				if (slot.status == SolveResult.Status.TIMEOUT) timedOutCount++;
+			}
+		}
+		slot.stats = stats ? s.stats.toJson() : null;
+	}
+
+	// Check one puzzle: a unique one counts as solved, one without solutions or with several as failed
+	private void count(Sudoku s, Slot slot){
+		slot.status = null;
+		slot.count = s.countSolutions(countLimit);
+		slot.timedOut = s.timedOut();
+		synchronized (this) {
+			if (slot.count==1 && !slot.timedOut) solvedCount++;
+			else failedCount++;
+			if (slot.timedOut) timedOutCount++;
+		}
+	}
+
+	// Write the outcome of one puzzle, on the reading thread
+	void write(Slot slot, PuzzleWriter out) throws IOException {
+		if (slot.status == null) {
+			if (slot.timedOut) {
+				out.write("Stopped before the count was complete, found ");
+				out.writeNumber(slot.count);
+			}
+			else out.write(Sudoku.describeCount(slot.count, countLimit));
+			out.write('\n');
+		}
+		else if (slot.status == SolveResult.Status.UNSAT) out.write("No solution found\n");
+		else if (slot.status == SolveResult.Status.TIMEOUT) {
+			out.write("Stopped before a solution was found (");
+			out.writeNumber(slot.filled);
+			out.write(" cells filled, ");
+			out.writeNumber(slot.nodes);
+			out.write(" nodes)\n");
+		}
+		else if (slot.oneLine) {
+			out.writeLine(slot.size, slot.grid);
+			out.write('\n');
+		}
+		else {
+			out.writeGrid(slot.size, slot.grid);
+			out.write('\n');
+		}
+		if (slot.stats != null) {
+			out.write(slot.stats);
+			out.write('\n');
+		}
+	}
+}
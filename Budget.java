@@ -0,0 +1,46 @@
+import java.util.concurrent.atomic.*;
+
+
+/* Budget bounds a solve by a deadline and/or a number of search nodes, so that no input
+ * can hold a solver thread for long.  Reading the clock at every node would cost more
+ * than the node itself, so the engines count their nodes and charge the budget once
+ * every interval nodes, and only then is the deadline checked.  One budget can be
+ * shared by the threads of the parallel and portfolio engines: their nodes add up, and
+ * all of them see exhausted once any of them ran it out. */
+final class Budget
+{
+	// Nodes between two charges, a power of two so that the engines can test it with mask
+	final int interval, mask;
+
+	private final long deadline, maxNodes;
+	private final boolean hasDeadline;
+	private final AtomicLong spent = new AtomicLong();
+
+	// Raised once the deadline passed or the nodes ran out, never lowered
+	volatile boolean exhausted;
+
+	// timeoutMillis and maxNodes of 0 mean no limit
+	Budget( long timeoutMillis, long maxNodes )
+	{
+		hasDeadline = timeoutMillis > 0;
+		deadline = System.nanoTime() + timeoutMillis*1000000L;
+		this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+		// A small node budget is charged more often, so it is not overrun by a whole interval
+		int n = 1024;
+		while (n > 1 && n > this.maxNodes/2) n >>= 1;
+		interval = n;
+		mask = n-1;
+	}
+
+	// Charge one interval of nodes and check the limits, returns true once the budget is exhausted
+	boolean spend(){
+		if (exhausted) return true;
+		if (spent.addAndGet(interval) >= maxNodes || (hasDeadline && System.nanoTime() - deadline >= 0)) exhausted = true;
+		return exhausted;
+	}
+
+	// Nodes charged so far, rounded down to the interval
+	long spent(){
+		return spent.get();
+	}
+}
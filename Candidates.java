@@ -0,0 +1,285 @@
+import java.util.*;
+
+
+/* Candidates is the persistent candidate state of a Sudoku grid with N<=32.  Every
+ * empty cell keeps a bitset of the values it can still take (bit k-1 set if k is
+ * possible).  Placing a value only touches the peers of the cell, and every change
+ * is written to a trail so that a search can undo back to an earlier mark. */
+class Candidates
+{
+	final int SIZE, N, cells;
+
+	// Value of every cell indexed by row*N+col, 0 if the cell is empty
+	final int[] value;
+
+	// Bitset of the possible values of every empty cell, 0 once the cell is solved
+	final int[] cand;
+
+	// Unit and peer tables shared by every state of this size, see Geometry
+	final Geometry geometry;
+	final int[] units, unitsOf, peers;
+	final int P;
+
+	// Number of cells of a unit that hold or can still take a value, indexed by unit*N+k-1
+	final int[] count;
+
+	// Bitset of the values placed in every unit
+	final int[] placed;
+
+	// Track the number of cells solved
+	int numberCellSolved;
+
+	// Set when a cell runs out of values or a value has no cell left in a unit
+	boolean contradiction;
+
+	// Trail of changes, two ints per entry: (cell, removed bits) for an elimination
+	// and (~cell, previous bits) for a placement
+	int[] trail;
+	int trailSize;
+
+	// Cells whose domain dropped to a single value, waiting to be handed out as naked singles
+	int[] nakedQueue = new int[64];
+	int nakedSize;
+
+	// Units and values (unit*N+k-1) with a single cell left, waiting to be handed out as hidden singles
+	int[] hiddenQueue = new int[64];
+	int hiddenSize;
+
+	// Unit of the last hidden single handed out
+	int lastHiddenUnit;
+
+	public Candidates( int size )
+	{
+		geometry = Geometry.of(size);
+		SIZE = size;
+		N = size*size;
+		cells = N*N;
+		units = geometry.units;
+		unitsOf = geometry.unitsOf;
+		peers = geometry.peers;
+		P = geometry.P;
+		value = new int[cells];
+		cand = new int[cells];
+		count = new int[3*N*N];
+		placed = new int[3*N];
+		// A solve never places more than every cell and removes more than every candidate, so the trail never grows
+		trail = new int[2*cells*(N+1)];
+	}
+
+	// Copy of another state, sharing its unit and peer tables, for a search running on another thread
+	// The trail and the queues start empty, so the copy should be taken once the other state is propagated
+	public Candidates( Candidates other )
+	{
+		SIZE = other.SIZE;
+		N = other.N;
+		cells = other.cells;
+		geometry = other.geometry;
+		units = other.units;
+		unitsOf = other.unitsOf;
+		peers = other.peers;
+		P = other.P;
+		trail = new int[other.trail.length];
+		value = other.value.clone();
+		cand = other.cand.clone();
+		count = other.count.clone();
+		placed = other.placed.clone();
+		numberCellSolved = other.numberCellSolved;
+		contradiction = other.contradiction;
+	}
+
+	// Bitset with the N possible values
+	int fullMask(){
+		return N==32 ? -1 : (1<<N)-1;
+	}
+
+	// Reset to the given grid, returns false if the givens contradict each other
+	// The state can be loaded again and again, nothing is allocated
+	public boolean load(int[][] grid){
+		geometry.checkValues(grid);
+		Arrays.fill(value, 0);
+		Arrays.fill(cand, fullMask());
+		Arrays.fill(count, N);
+		Arrays.fill(placed, 0);
+		numberCellSolved = 0;
+		contradiction = false;
+		trailSize = 0;
+		nakedSize = 0;
+		hiddenSize = 0;
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				if (grid[r][c]>0) {
+					int cell = r*N+c;
+					// A given that is no longer possible clashes with an earlier given
+					if ((cand[cell] & (1<<(grid[r][c]-1))) == 0) contradiction = true;
+					else place(cell, grid[r][c]);
+				}
+		return !contradiction;
+	}
+
+	// Check if a value k is still possible in an empty cell
+	boolean isCandidate(int cell, int k){
+		assert k>=1 && k<=N : k;
+		return (cand[cell] & (1<<(k-1))) != 0;
+	}
+
+	// Insert k in the cell and remove it from the domains of all the peers
+	// Returns false if the placement leads to a contradiction
+	public boolean place(int cell, int k){
+		assert k>=1 && k<=N : k;
+		int bit = 1<<(k-1);
+		int others = cand[cell] & ~bit;
+		push(~cell, cand[cell]);
+		value[cell] = k;
+		cand[cell] = 0;
+		numberCellSolved++;
+		int u0 = unitsOf[cell*3], u1 = unitsOf[cell*3+1], u2 = unitsOf[cell*3+2];
+		placed[u0] |= bit;
+		placed[u1] |= bit;
+		placed[u2] |= bit;
+		// The cell no longer offers its other values to its units
+		for (int m=others; m!=0; m&=m-1) {
+			int d = Integer.numberOfTrailingZeros(m);
+			decrement(u0, d);
+			decrement(u1, d);
+			decrement(u2, d);
+		}
+		for (int i=cell*P, end=i+P; i<end; i++) {
+			int p = peers[i];
+			if ((cand[p] & bit) != 0) eliminate(p, bit);
+		}
+		return !contradiction;
+	}
+
+	// Remove the values in bits from the domain of an empty cell
+	// Returns false if the cell or one of its units runs out of options
+	public boolean eliminate(int cell, int bits){
+		int removed = cand[cell] & bits;
+		if (removed==0) return !contradiction;
+		push(cell, removed);
+		int left = cand[cell] &= ~removed;
+		if (left==0) contradiction = true;
+		else if ((left & (left-1)) == 0) {
+			if (nakedSize==nakedQueue.length) nakedQueue = Arrays.copyOf(nakedQueue, 2*nakedSize);
+			nakedQueue[nakedSize++] = cell;
+		}
+		int u0 = unitsOf[cell*3], u1 = unitsOf[cell*3+1], u2 = unitsOf[cell*3+2];
+		for (int m=removed; m!=0; m&=m-1) {
+			int d = Integer.numberOfTrailingZeros(m);
+			decrement(u0, d);
+			decrement(u1, d);
+			decrement(u2, d);
+		}
+		return !contradiction;
+	}
+
+	// One less cell can take value d+1 in unit u
+	private void decrement(int u, int d){
+		int left = --count[u*N+d];
+		if ((placed[u] & (1<<d)) != 0) return;
+		if (left==0) contradiction = true;
+		else if (left==1) {
+			if (hiddenSize==hiddenQueue.length) hiddenQueue = Arrays.copyOf(hiddenQueue, 2*hiddenSize);
+			hiddenQueue[hiddenSize++] = u*N+d;
+		}
+	}
+
+	private void push(int a, int b){
+		if (trailSize+2 > trail.length) trail = Arrays.copyOf(trail, 2*trail.length);
+		trail[trailSize++] = a;
+		trail[trailSize++] = b;
+	}
+
+	// Current position in the trail, pass it to undo() to come back to this state
+	public int mark(){
+		return trailSize;
+	}
+
+	// Revert every placement and elimination made since the mark
+	public void undo(int mark){
+		while (trailSize > mark) {
+			int bits = trail[--trailSize];
+			int a = trail[--trailSize];
+			if (a<0) {
+				int cell = ~a;
+				int k = value[cell];
+				int bit = 1<<(k-1);
+				int u0 = unitsOf[cell*3], u1 = unitsOf[cell*3+1], u2 = unitsOf[cell*3+2];
+				placed[u0] &= ~bit;
+				placed[u1] &= ~bit;
+				placed[u2] &= ~bit;
+				for (int m=bits & ~bit; m!=0; m&=m-1) {
+					int d = Integer.numberOfTrailingZeros(m);
+					count[u0*N+d]++;
+					count[u1*N+d]++;
+					count[u2*N+d]++;
+				}
+				value[cell] = 0;
+				cand[cell] = bits;
+				numberCellSolved--;
+			}
+			else {
+				cand[a] |= bits;
+				int u0 = unitsOf[a*3], u1 = unitsOf[a*3+1], u2 = unitsOf[a*3+2];
+				for (int m=bits; m!=0; m&=m-1) {
+					int d = Integer.numberOfTrailingZeros(m);
+					count[u0*N+d]++;
+					count[u1*N+d]++;
+					count[u2*N+d]++;
+				}
+			}
+		}
+		// Everything pending was deduced after the mark, the state at the mark was already worked through
+		contradiction = false;
+		nakedSize = 0;
+		hiddenSize = 0;
+	}
+
+	// Queue again every single of the state, for a state changed and undone without propagating it
+	// (undo drops the queues, as a search only comes back to states it worked through)
+	public void requeue(){
+		nakedSize = 0;
+		hiddenSize = 0;
+		for (int cell=0; cell<cells; cell++) {
+			int m = cand[cell];
+			if (m!=0 && (m & (m-1)) == 0) {
+				if (nakedSize==nakedQueue.length) nakedQueue = Arrays.copyOf(nakedQueue, 2*nakedSize);
+				nakedQueue[nakedSize++] = cell;
+			}
+		}
+		for (int e=0; e<3*N*N; e++)
+			if (count[e]==1 && (placed[e/N] & (1<<(e%N))) == 0) {
+				if (hiddenSize==hiddenQueue.length) hiddenQueue = Arrays.copyOf(hiddenQueue, 2*hiddenSize);
+				hiddenQueue[hiddenSize++] = e;
+			}
+	}
+
+	// Next naked single as a move cell*N+k-1, or -1 if there is none left
+	public int nextNakedSingle(){
+		while (nakedSize > 0) {
+			int cell = nakedQueue[--nakedSize];
+			int m = cand[cell];
+			// Skip cells solved or emptied since they were queued
+			if (m!=0 && (m & (m-1)) == 0) return cell*N + Integer.numberOfTrailingZeros(m);
+		}
+		return -1;
+	}
+
+	// Next hidden single as a move cell*N+k-1, or -1 if there is none left
+	public int nextHiddenSingle(){
+		while (hiddenSize > 0) {
+			int e = hiddenQueue[--hiddenSize];
+			int u = e/N, d = e%N;
+			if (count[e]!=1 || (placed[u] & (1<<d)) != 0) continue;
+			lastHiddenUnit = u;
+			for (int i=u*N, end=i+N; i<end; i++)
+				if ((cand[units[i]] & (1<<d)) != 0) return units[i]*N + d;
+		}
+		return -1;
+	}
+
+	// Copy the solved cells into a grid
+	public void store(int[][] grid){
+		for (int cell=0; cell<cells; cell++)
+			grid[cell/N][cell%N] = value[cell];
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.*;
+
+
+/* CanonicalForm maps a puzzle to a representative of its symmetry class, so puzzles
+ * that only differ by a relabeling of the digits, a transposition or a permutation of
+ * the bands, stacks and of the rows and columns inside them share one key.
+ * 1. For the grid and its transpose, rank every row and column by its number of givens,
+ *    then refine the ranks a few times by hashing in the ranks of the crossing lines
+ *    through the givens, the box counts and the digit counts of those givens.  Sort the
+ *    bands by the ranks of their rows and the rows of every band by rank, and the same
+ *    for the stacks and columns.
+ * 2. Relabel the digits in the order they first appear, reading the sorted grid row by row
+ * 3. Keep the smaller of the two orientations
+ * The sort keys don't change under any of the symmetries, so the form is exact for
+ * relabelings and transpositions and for permutations that leave no tie.  Tied rows
+ * keep their order, a permuted copy can then get another key: the cache misses, the
+ * answer is never wrong. */
+final class CanonicalForm
+{
+	final int SIZE, N;
+
+	// The canonical puzzle, one char per cell ('0' + value)
+	final String key;
+
+	// Transform: canonical cell (i, j) is cell (rowOrder[i], colOrder[j]) of the grid, transposed first if needed
+	private final boolean transposed;
+	private final int[] rowOrder, colOrder;
+
+	// Canonical label of every digit and the digit of every label, index 0 stays 0
+	private final int[] label, digit;
+
+	// Time taken to build the form, counted in the lookup cost of the cache
+	final long nanos;
+
+	CanonicalForm( int size, int[][] grid )
+	{
+		long startTime = System.nanoTime();
+		SIZE = size;
+		N = size*size;
+		int[] rows = new int[N], cols = new int[N], labels = new int[N+1];
+		int[] rowsT = new int[N], colsT = new int[N], labelsT = new int[N+1];
+		String plain = reduce(grid, false, rows, cols, labels);
+		String flipped = reduce(grid, true, rowsT, colsT, labelsT);
+		transposed = flipped.compareTo(plain) < 0;
+		key = transposed ? flipped : plain;
+		rowOrder = transposed ? rowsT : rows;
+		colOrder = transposed ? colsT : cols;
+		label = transposed ? labelsT : labels;
+		digit = new int[N+1];
+		for (int d=1; d<=N; d++) digit[label[d]] = d;
+		nanos = System.nanoTime() - startTime;
+	}
+
+	// Value of the grid in the chosen orientation
+	private static int at(int[][] grid, boolean transposed, int r, int c){
+		return transposed ? grid[c][r] : grid[r][c];
+	}
+
+	// Sort one orientation of the grid and relabel it, filling the orders and labels
+	private String reduce(int[][] grid, boolean transposed, int[] rows, int[] cols, int[] labels){
+		int[] rowCount = new int[N], colCount = new int[N], boxCount = new int[N], digitCount = new int[N+1];
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++) {
+				int v = at(grid, transposed, r, c);
+				if (v != 0) {
+					rowCount[r]++;
+					colCount[c]++;
+					boxCount[(r/SIZE)*SIZE + c/SIZE]++;
+					digitCount[v]++;
+				}
+			}
+
+		// What a given says about its lines that no symmetry changes: the givens of its box and of its digit
+		long[] cellHash = new long[N*N];
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++) {
+				int v = at(grid, transposed, r, c);
+				if (v != 0) cellHash[r*N+c] = mix(boxCount[(r/SIZE)*SIZE + c/SIZE]*(N+1L) + digitCount[v]);
+			}
+
+		// A line starts ranked by its givens, every round adds the ranks of the crossing lines through them
+		long[] rowRank = new long[N], colRank = new long[N];
+		for (int i=0; i<N; i++) {
+			rowRank[i] = rowCount[i];
+			colRank[i] = colCount[i];
+		}
+		for (int round=0; round<3; round++) {
+			long[] rowNext = new long[N], colNext = new long[N];
+			for (int r=0; r<N; r++)
+				for (int c=0; c<N; c++)
+					if (at(grid, transposed, r, c) != 0) {
+						rowNext[r] += mix(colRank[c] ^ cellHash[r*N+c]);
+						colNext[c] += mix(rowRank[r] ^ cellHash[r*N+c]);
+					}
+			for (int i=0; i<N; i++) {
+				rowRank[i] = mix(rowRank[i]) + rowNext[i];
+				colRank[i] = mix(colRank[i]) + colNext[i];
+			}
+		}
+		// Keep the number of givens as the first sort key
+		for (int i=0; i<N; i++) {
+			rowRank[i] = ((long) rowCount[i] << 48) | (rowRank[i] >>> 16);
+			colRank[i] = ((long) colCount[i] << 48) | (colRank[i] >>> 16);
+		}
+		order(rowRank, rows);
+		order(colRank, cols);
+
+		// Relabel in the order of first appearance, the digits left out take the last labels in increasing order
+		Arrays.fill(labels, 0);
+		int next = 1;
+		char[] out = new char[N*N];
+		for (int i=0; i<N; i++)
+			for (int j=0; j<N; j++) {
+				int v = at(grid, transposed, rows[i], cols[j]);
+				if (v != 0 && labels[v] == 0) labels[v] = next++;
+				out[i*N+j] = (char) ('0' + (v==0 ? 0 : labels[v]));
+			}
+		for (int d=1; d<=N; d++)
+			if (labels[d] == 0) labels[d] = next++;
+		return new String(out);
+	}
+
+	// Finalizer of MurmurHash3, spreads every bit of x over the whole result
+	private static long mix(long x){
+		x ^= x >>> 33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x >>> 33;
+		x *= 0xc4ceb9fe1a85ec53L;
+		return x ^ (x >>> 33);
+	}
+
+	// Order the bands by the sum of the ranks of their lines, then the lines of each band by rank
+	// Both sorts are stable so tied lines keep their order
+	private void order(long[] rank, int[] order){
+		Integer[] bands = new Integer[SIZE];
+		final long[] bandRank = new long[SIZE];
+		for (int i=0; i<N; i++) bandRank[i/SIZE] += rank[i];
+		for (int b=0; b<SIZE; b++) bands[b] = b;
+		Arrays.sort(bands, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b){
+				return Long.compare(bandRank[a], bandRank[b]);
+			}
+		});
+
+		final long[] lineRank = rank;
+		Integer[] lines = new Integer[SIZE];
+		for (int b=0; b<SIZE; b++) {
+			for (int k=0; k<SIZE; k++) lines[k] = bands[b]*SIZE + k;
+			Arrays.sort(lines, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b){
+					return Long.compare(lineRank[a], lineRank[b]);
+				}
+			});
+			for (int k=0; k<SIZE; k++) order[b*SIZE+k] = lines[k];
+		}
+	}
+
+	// A solution of the puzzle this form was built from, written in canonical form
+	String encode(int[][] solution){
+		char[] out = new char[N*N];
+		for (int i=0; i<N; i++)
+			for (int j=0; j<N; j++)
+				out[i*N+j] = (char) ('0' + label[at(solution, transposed, rowOrder[i], colOrder[j])]);
+		return new String(out);
+	}
+
+	// Map a canonical solution back to the cells and digits of the original grid
+	void decode(String solution, int[][] grid){
+		for (int i=0; i<N; i++)
+			for (int j=0; j<N; j++) {
+				int v = digit[solution.charAt(i*N+j) - '0'];
+				if (transposed) grid[colOrder[j]][rowOrder[i]] = v;
+				else grid[rowOrder[i]][colOrder[j]] = v;
+			}
+	}
+}
@@ -0,0 +1,203 @@
+import java.util.concurrent.atomic.*;
+
+
+/* DancingLinks solves a Sudoku grid as an exact cover problem with Knuth's Algorithm X.
+ * Every (cell, value) pair is a row covering four columns: the cell, the value in the
+ * row, the value in the column and the value in the box.  Columns already satisfied
+ * by the givens and rows conflicting with them are left out, and the search always
+ * branches on the column with the fewest rows left. */
+class DancingLinks
+{
+	final int SIZE, N, cells;
+
+	// The grid read by Sudoku.read, filled in place when a solution is found
+	final int[][] grid;
+
+	// Circular links of the nodes, node 0 is the root and nodes 1..4*cells are the column headers
+	int[] L, R, U, D, C;
+
+	// Candidate (cell*N + k-1) of the row every node belongs to
+	int[] rowOf;
+
+	// Number of rows left in every column
+	int[] size;
+
+	// Candidates chosen on the current search path
+	int[] solution;
+	int depth;
+
+	// Number of search nodes explored, and rows taken back after their subtree failed
+	long searchNodes, backtracks;
+
+	// Deadline and node limit of the search, null for none, and the nodes not yet charged to it
+	Budget budget;
+	private int ticks;
+
+	// Set from any thread to stop the search, it is checked at every node
+	AtomicBoolean cancelled = new AtomicBoolean();
+
+	public DancingLinks( int size, int[][] grid )
+	{
+		SIZE = size;
+		N = size*size;
+		cells = N*N;
+		this.grid = grid;
+	}
+
+	// Solve the grid, returns false if the givens contradict each other or have no solution
+	// A cancelled search or one out of budget also returns false, check cancelled and the budget to tell them apart
+	public boolean solve(){
+		if (!build()) return false;
+		solution = new int[cells];
+		depth = 0;
+		if (!search()) return false;
+		for (int i=0; i<depth; i++) {
+			int cell = solution[i]/N;
+			grid[cell/N][cell%N] = solution[i]%N + 1;
+		}
+		return true;
+	}
+
+	// True if another thread stopped the search or the budget ran out, the budget is only charged every interval nodes
+	private boolean stopped(){
+		if (cancelled.get()) return true;
+		if (budget==null) return false;
+		if ((++ticks & budget.mask) == 0) return budget.spend();
+		return budget.exhausted;
+	}
+
+	// Build the exact cover matrix of the empty cells, returns false if two givens clash
+	private boolean build(){
+		Geometry.of(SIZE).checkValues(grid);
+		int columns = 4*cells;
+		boolean[] done = new boolean[columns];
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++) {
+				int k = grid[r][c];
+				if (k==0) continue;
+				int[] cols = columnsOf(r, c, k-1);
+				for (int col : cols) {
+					if (done[col]) return false;
+					done[col] = true;
+				}
+			}
+
+		// Every candidate row adds 4 nodes
+		int capacity = 1 + columns + 4*cells*N;
+		L = new int[capacity]; R = new int[capacity];
+		U = new int[capacity]; D = new int[capacity];
+		C = new int[capacity]; rowOf = new int[capacity];
+		size = new int[columns+1];
+
+		// Link the headers of the columns still to cover, the others stay out of the root list
+		L[0] = R[0] = 0;
+		for (int col=0; col<columns; col++) {
+			int h = col+1;
+			U[h] = D[h] = C[h] = h;
+			if (done[col]) continue;
+			L[h] = L[0]; R[h] = 0;
+			R[L[0]] = h; L[0] = h;
+		}
+
+		int nodes = columns+1;
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++) {
+				if (grid[r][c]!=0) continue;
+				for (int d=0; d<N; d++) {
+					int[] cols = columnsOf(r, c, d);
+					// A value already used in the row, column or box by a given is not a candidate
+					if (done[cols[1]] || done[cols[2]] || done[cols[3]]) continue;
+					int first = nodes;
+					for (int col : cols) {
+						int h = col+1;
+						int n = nodes++;
+						C[n] = h;
+						rowOf[n] = (r*N+c)*N + d;
+						U[n] = U[h]; D[n] = h;
+						D[U[h]] = n; U[h] = n;
+						size[h]++;
+						L[n] = n-1; R[n] = n+1;
+					}
+					L[first] = nodes-1;
+					R[nodes-1] = first;
+				}
+			}
+		return true;
+	}
+
+	// The 4 constraint columns covered by value d+1 in the cell (r, c)
+	private int[] columnsOf(int r, int c, int d){
+		int b = (r/SIZE)*SIZE + c/SIZE;
+		return new int[] { r*N+c, cells + r*N+d, 2*cells + c*N+d, 3*cells + b*N+d };
+	}
+
+	// Remove a column from the header list and all its rows from the other columns
+	private void cover(int c){
+		L[R[c]] = L[c];
+		R[L[c]] = R[c];
+		for (int i=D[c]; i!=c; i=D[i])
+			for (int j=R[i]; j!=i; j=R[j]) {
+				U[D[j]] = U[j];
+				D[U[j]] = D[j];
+				size[C[j]]--;
+			}
+	}
+
+	// Put back a column removed by cover, in the reverse order
+	private void uncover(int c){
+		for (int i=U[c]; i!=c; i=U[i])
+			for (int j=L[i]; j!=i; j=L[j]) {
+				size[C[j]]++;
+				U[D[j]] = j;
+				D[U[j]] = j;
+			}
+		L[R[c]] = c;
+		R[L[c]] = c;
+	}
+
+	// Algorithm X: cover the column with the fewest rows and try each of its rows in turn
+	// The column and the row tried at every depth are kept on explicit stacks, depth is the number of rows taken
+	private boolean search(){
+		int[] columnStack = new int[cells+1], rowStack = new int[cells+1];
+		boolean descend = true;
+		while (true) {
+			if (descend) {
+				if (R[0]==0) return true;
+				if (stopped()) return false;
+				searchNodes++;
+
+				int c = R[0];
+				for (int j=R[c]; j!=0; j=R[j])
+					if (size[j] < size[c]) c = j;
+				// An empty column fails this depth, the row taken above it is the next to go back on
+				if (size[c]==0) {
+					if (depth==0) return false;
+					descend = false;
+					continue;
+				}
+				cover(c);
+				columnStack[depth] = c;
+				rowStack[depth] = c;
+			}
+			else {
+				// Take back the row of the depth above the one that failed
+				depth--;
+				int r = rowStack[depth];
+				for (int j=L[r]; j!=r; j=L[j]) uncover(C[j]);
+				backtracks++;
+			}
+			int c = columnStack[depth], r = D[rowStack[depth]];
+			if (r==c) {
+				// Every row of the column failed
+				uncover(c);
+				if (depth==0) return false;
+				descend = false;
+				continue;
+			}
+			rowStack[depth] = r;
+			solution[depth++] = rowOf[r];
+			for (int j=R[r]; j!=r; j=R[j]) cover(C[j]);
+			descend = true;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/* Geometry holds the unit and peer tables of a grid size as flat int arrays indexed by
+ * cell (row*N+col).  The tables never change for a given size, so they are built once
+ * and shared by every solver instance and thread working on grids of that size. */
+final class Geometry
+{
+	final int SIZE, N, cells;
+
+	// Number of peers of every cell: the rest of its row and column, plus the rest of its box
+	final int P;
+
+	// Cells of every unit, units[u*N+i], the rows are 0..N-1, the columns N..2N-1 and the boxes 2N..3N-1
+	final int[] units;
+
+	// The row, column and box unit of every cell, unitsOf[cell*3+j]
+	final int[] unitsOf;
+
+	// The other cells sharing a row, column or box with every cell, peers[cell*P+i]
+	// Only Candidates reads it, so it is left null on the grids bigger than 32x32 (11MB on a 100x100 grid)
+	final int[] peers;
+
+	private static final Geometry[] cache = new Geometry[101];
+
+	// Tables for a box size, built on the first request
+	static synchronized Geometry of(int size){
+		if (cache[size]==null) cache[size] = new Geometry(size);
+		return cache[size];
+	}
+
+	private Geometry( int size )
+	{
+		SIZE = size;
+		N = size*size;
+		cells = N*N;
+		P = 2*(N-1) + (SIZE-1)*(SIZE-1);
+		units = new int[3*N*N];
+		unitsOf = new int[3*cells];
+		peers = N<=32 ? new int[cells*P] : null;
+
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++) {
+				int cell = r*N+c;
+				int b = (r/SIZE)*SIZE + c/SIZE;
+				int i = (r%SIZE)*SIZE + c%SIZE;
+				units[r*N+c] = cell;
+				units[(N+c)*N+r] = cell;
+				units[(2*N+b)*N+i] = cell;
+				unitsOf[cell*3] = r;
+				unitsOf[cell*3+1] = N+c;
+				unitsOf[cell*3+2] = 2*N+b;
+			}
+
+		if (peers==null) return;
+		boolean[] seen = new boolean[cells];
+		for (int cell=0; cell<cells; cell++) {
+			int n = cell*P;
+			for (int j=0; j<3; j++) {
+				int u = unitsOf[cell*3+j];
+				for (int i=0; i<N; i++) {
+					int other = units[u*N+i];
+					if (other!=cell && !seen[other]) {
+						seen[other] = true;
+						peers[n++] = other;
+					}
+				}
+			}
+			for (int i=cell*P; i<n; i++) seen[peers[i]] = false;
+		}
+	}
+
+	// Throw if a cell of the grid holds a value out of 0..N: the solvers keep the values as bits 1<<(k-1),
+	// whose shift only keeps the low bits of k-1, so such a value would silently stand for another one
+	void checkValues(int[][] grid){
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				if (grid[r][c]<0 || grid[r][c]>N) throw new IllegalArgumentException("The cell value must be between 0 and " + N + ", got " + grid[r][c]);
+	}
+}
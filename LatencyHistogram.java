@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.*;
+
+
+/* LatencyHistogram counts durations in nanoseconds so that percentiles can be read
+ * without keeping every sample.  Below 64ns every value has its own bucket, above it
+ * every power of two is split into 32 buckets, so a percentile is off by at most 3% and
+ * the whole range of a long fits in under 2000 buckets.  Recording is one atomic
+ * increment, any number of threads can record at the same time. */
+class LatencyHistogram
+{
+	private static final int SUB_BUCKETS = 32;
+
+	private final AtomicLongArray counts = new AtomicLongArray(bucket(Long.MAX_VALUE)+1);
+
+	// Bucket of a duration, linear up to 64 then 32 per power of two
+	static int bucket(long nanos){
+		if (nanos < 2*SUB_BUCKETS) return (int) Math.max(nanos, 0);
+		int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		int top = (int) (nanos >>> (exp-5));
+		return (exp-5)*SUB_BUCKETS + top;
+	}
+
+	// Smallest duration that falls in a bucket
+	static long lowerBound(int bucket){
+		if (bucket < 2*SUB_BUCKETS) return bucket;
+		int exp = bucket/SUB_BUCKETS + 4;
+		long top = bucket%SUB_BUCKETS + SUB_BUCKETS;
+		return top << (exp-5);
+	}
+
+	public void record(long nanos){
+		counts.incrementAndGet(bucket(nanos));
+	}
+
+	// Move every count to a new histogram and start again from zero, for reports over a window of time
+	public LatencyHistogram drain(){
+		LatencyHistogram copy = new LatencyHistogram();
+		for (int i=0; i<counts.length(); i++) {
+			long n = counts.getAndSet(i, 0);
+			if (n!=0) copy.counts.set(i, n);
+		}
+		return copy;
+	}
+
+	// Add the counts of another histogram to this one
+	public void add(LatencyHistogram other){
+		for (int i=0; i<counts.length(); i++) {
+			long n = other.counts.get(i);
+			if (n!=0) counts.addAndGet(i, n);
+		}
+	}
+
+	public long count(){
+		long total = 0;
+		for (int i=0; i<counts.length(); i++) total += counts.get(i);
+		return total;
+	}
+
+	// Duration under which a fraction of the samples fall, the middle of its bucket, 0 if there are none
+	public long percentile(double fraction){
+		long total = count();
+		if (total==0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction*total));
+		int last = 0;
+		for (int i=0; i<counts.length(); i++) {
+			long n = counts.get(i);
+			if (n==0) continue;
+			last = i;
+			rank -= n;
+			if (rank <= 0) break;
+		}
+		long low = lowerBound(last);
+		return low + (lowerBound(last+1) - low)/2;
+	}
+
+	// Largest duration recorded, to the precision of its bucket
+	public long max(){
+		for (int i=counts.length()-1; i>=0; i--)
+			if (counts.get(i)!=0) return lowerBound(i+1)-1;
+		return 0;
+	}
+
+	// Percentiles in milliseconds for the reports, "p50 1.25ms, p99 3.40ms"
+	public String summary(){
+		return String.format("p50 %.2fms, p99 %.2fms, max %.2fms", percentile(0.5)/1e6, percentile(0.99)/1e6, max()/1e6);
+	}
+}
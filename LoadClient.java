@@ -0,0 +1,149 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+
+/* LoadClient replays puzzle files against a SolveServer on the same machine, to measure
+ * it under a steady load.  Every connection sends one puzzle, waits for its answer and
+ * sends the next, going through the files in turn, so the number of connections is the
+ * number of puzzles in flight.  The latency of every answer is measured from the send
+ * to its last line, and the throughput with the p50, p99 and max latency is printed at
+ * the end, with the answers that report no solution or an error.  The first seconds
+ * warm up the server and are left out of the numbers.
+ * Usage: java LoadClient [-host <host>] [-port <port>] [-connections <n>] [-seconds <n>]
+ *        [-warmup <n>] [puzzle files, every *.txt puzzle of the directory by default] */
+class LoadClient
+{
+	final String host;
+	final int port;
+
+	// Text of every puzzle to send, ending with a line break
+	final List<byte[]> puzzles;
+
+	// Answers measured, and the ones with no solution, stopped or an error
+	final AtomicLong answered = new AtomicLong(), failed = new AtomicLong();
+	final LatencyHistogram latency = new LatencyHistogram();
+
+	// Set once the warm up is over, the answers before it are not counted
+	volatile boolean measuring;
+
+	public LoadClient( String host, int port, List<byte[]> puzzles )
+	{
+		this.host = host;
+		this.port = port;
+		this.puzzles = puzzles;
+	}
+
+	// Send puzzles on one connection until the end of the run, starting at a different puzzle on every connection
+	void connection(int first, long endNanos) throws IOException {
+		try (Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			for (int i=first; System.nanoTime() < endNanos; i++) {
+				long start = System.nanoTime();
+				out.write(puzzles.get(i % puzzles.size()));
+				out.flush();
+				boolean ok = readAnswer(in);
+				if (!measuring) continue;
+				latency.record(System.nanoTime() - start);
+				answered.incrementAndGet();
+				if (!ok) failed.incrementAndGet();
+			}
+		}
+	}
+
+	// Read one answer: a grid ends with an empty line, a one line grid with its line, and the counts,
+	// no solutions and errors are one line of text.  Returns false if the puzzle wasn't solved
+	static boolean readAnswer(BufferedReader in) throws IOException {
+		String line = in.readLine();
+		if (line == null) throw new EOFException("The server closed the connection");
+		if (line.startsWith("Error")) throw new IOException(line);
+		if (line.startsWith("No solution") || line.startsWith("Stopped")) return false;
+		if (line.startsWith("Solutions")) return line.startsWith("Solutions: 1 ");
+		// A one line grid has no spaces, a grid in the usual format goes on to its empty line
+		if (line.indexOf(' ') < 0) return true;
+		while ((line = in.readLine()) != null && !line.isEmpty());
+		return true;
+	}
+
+	// Puzzle files of the directory, the *.txt files that start with a size
+	static List<Path> bundledPuzzles(Path dir) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.txt")) {
+			for (Path file : stream)
+				try (InputStream in = Files.newInputStream(file)) {
+					if (new PuzzleReader(in).next() != null) files.add(file);
+				}
+				catch (IOException e) {
+					// Not a puzzle file, left out
+				}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	public static void main( String args[] ) throws Exception
+	{
+		String host = "localhost";
+		int port = 7878;
+		int connections = 4;
+		int seconds = 10;
+		int warmup = 3;
+		List<Path> files = new ArrayList<Path>();
+		for (int i=0; i<args.length; i++) {
+			if (args[i].equals("-host") && i+1 < args.length) host = args[++i];
+			else if (args[i].equals("-port") && i+1 < args.length) port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-connections") && i+1 < args.length) connections = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seconds") && i+1 < args.length) seconds = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-warmup") && i+1 < args.length) warmup = Integer.parseInt(args[++i]);
+			else files.add(Paths.get(args[i]));
+		}
+		if (files.isEmpty()) files = bundledPuzzles(Paths.get("."));
+		if (files.isEmpty()) {
+			System.out.println("Error: No puzzle file to send.");
+			System.exit(-1);
+		}
+		List<byte[]> puzzles = new ArrayList<byte[]>();
+		for (Path file : files) {
+			byte[] text = Files.readAllBytes(file);
+			// The last number of a puzzle is only read once the space after it arrives
+			puzzles.add((new String(text, StandardCharsets.US_ASCII).trim() + "\n").getBytes(StandardCharsets.US_ASCII));
+		}
+
+		final LoadClient client = new LoadClient(host, port, puzzles);
+		final long end = System.nanoTime() + (warmup+seconds)*1000000000L;
+		ExecutorService pool = SolveServer.connectionThreads();
+		List<Future<?>> running = new ArrayList<Future<?>>();
+		for (int i=0; i<connections; i++) {
+			final int first = i;
+			running.add(pool.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					client.connection(first, end);
+					return null;
+				}
+			}));
+		}
+		Thread.sleep(warmup*1000L);
+		client.measuring = true;
+		long start = System.nanoTime();
+		try {
+			for (Future<?> f : running) f.get();
+		}
+		catch (ExecutionException e) {
+			System.out.println("Error: " + e.getCause().getMessage() + ".");
+			System.exit(-1);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		double elapsed = (System.nanoTime() - start)/1e9;
+		long n = client.answered.get();
+		System.out.println("Sent " + files.size() + " puzzle files on " + connections + " connections: " + n + " answers in " + elapsed + "s ("
+			+ (long) (n/elapsed) + " puzzles/sec), " + client.latency.summary() + (client.failed.get()>0 ? ", " + client.failed.get() + " not solved" : ""));
+	}
+}
@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.*;
+
+
+/* MrvSearch is the deterministic depth first search used on large grids.  It works on
+ * a Candidates state that has already been propagated:
+ * 1. Pick the empty cell with the fewest possible values (minimum remaining values)
+ * 2. Insert its values in increasing order and propagate the rules after each one (forward checking)
+ * 3. If the grid reaches a contradiction, undo the trail back to the mark and try the next value
+ * The cell, trail mark and value of every depth are kept on explicit stacks, as in
+ * WideSearch, so a deep search doesn't depend on the size of the thread stack.
+ * On success the candidates state is left solved. */
+class MrvSearch
+{
+	final Candidates c;
+	final Propagator propagator;
+	final int N;
+
+	// Number of search nodes explored
+	long nodes;
+
+	// Set from any thread to stop the search, it is checked at every node
+	AtomicBoolean cancelled = new AtomicBoolean();
+
+	// Node and backtrack counters, only updated when attached
+	SolverStats stats;
+
+	// Solutions found by the last search or count, the number at which a count stops, and a copy of the values of its first one
+	int solutions, countLimit;
+	int[] firstSolution;
+
+	// Deadline and node limit of the search, null for none, and the nodes not yet charged to it
+	Budget budget;
+	private int ticks;
+
+	// Cell, trail mark and last value index tried at every depth of the search
+	private final int[] cellStack, markStack, valueStack;
+
+	public MrvSearch( Candidates candidates, Propagator propagator )
+	{
+		c = candidates;
+		this.propagator = propagator;
+		N = candidates.N;
+		cellStack = new int[c.cells];
+		markStack = new int[c.cells];
+		valueStack = new int[c.cells];
+	}
+
+	// True if another thread stopped the search or the budget ran out, the budget is only charged every interval nodes
+	private boolean stopped(){
+		if (cancelled.get()) return true;
+		if (budget==null) return false;
+		if ((++ticks & budget.mask) == 0) return budget.spend();
+		return budget.exhausted;
+	}
+
+	// Empty cell with the smallest domain, or -1 if the grid is full
+	int pickCell(){
+		int best = -1, bestSize = N+1;
+		// A domain of one can't be beaten
+		for (int cell=0; cell<c.cells && bestSize>1; cell++)
+			if (c.value[cell]==0) {
+				int size = Integer.bitCount(c.cand[cell]);
+				if (size < bestSize) {
+					bestSize = size;
+					best = cell;
+				}
+			}
+		return best;
+	}
+
+	// Returns false if no value works, so an unsolvable grid is reported once the whole tree is explored
+	// A cancelled search or one out of budget also returns false, check cancelled and the budget to tell them apart
+	// On failure the state is put back as it was
+	public boolean search(){
+		int mark = c.mark();
+		explore(1, false);
+		if (solutions>0) return true;
+		c.undo(mark);
+		return false;
+	}
+
+	// Count the solutions up to limit, the search stops as soon as limit is reached
+	// Every rule of the propagator keeps all the solutions, so they all prune the count
+	// The candidates state is left as it was, the first solution is kept in firstSolution
+	public int count(int limit){
+		solutions = 0;
+		countLimit = limit;
+		int mark = c.mark();
+		if (propagator.propagate()) explore(limit, true);
+		c.undo(mark);
+		return solutions;
+	}
+
+	// Depth first search for limit solutions, stopping on the last one with the state solved
+	// 1. Pick the empty cell with the fewest possible values and push it
+	// 2. Undo the last value tried in the cell on top, insert its next value and propagate
+	// 3. Push the next cell if the grid is still open, pop the cell once it has no value left
+	// A search counts its backtracks, a count keeps a copy of its first solution instead
+	private void explore(int limit, boolean counting){
+		solutions = 0;
+		if (stopped()) return;
+		node();
+		int cell = pickCell();
+		if (cell<0) {
+			found(counting);
+			return;
+		}
+		int depth = 0;
+		cellStack[0] = cell;
+		markStack[0] = c.mark();
+		valueStack[0] = -1;
+		depth++;
+		while (depth > 0) {
+			int top = depth-1;
+			cell = cellStack[top];
+			int last = valueStack[top];
+			if (last>=0) {
+				c.undo(markStack[top]);
+				if (!counting && stats!=null) stats.backtracks++;
+			}
+			// Once undone the cell has the domain it had when pushed, the values above the last one are left
+			int m = last<0 ? c.cand[cell] : c.cand[cell] & (-2<<last);
+			if (m==0) {
+				depth--;
+				continue;
+			}
+			int d = Integer.numberOfTrailingZeros(m);
+			valueStack[top] = d;
+			if (!c.place(cell, d+1) || !propagator.propagate()) continue;
+			if (stopped()) return;
+			node();
+			int next = pickCell();
+			if (next<0) {
+				found(counting);
+				if (solutions>=limit) return;
+				continue;
+			}
+			cellStack[depth] = next;
+			markStack[depth] = c.mark();
+			valueStack[depth] = -1;
+			depth++;
+		}
+	}
+
+	private void node(){
+		nodes++;
+		if (stats!=null) stats.nodes++;
+	}
+
+	private void found(boolean counting){
+		if (solutions++ == 0 && counting) firstSolution = c.value.clone();
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+/* ParallelSolver splits the search tree of MrvSearch over a ForkJoinPool.  The first
+ * splitDepth branch points fork one task per value, each with its own copy of the
+ * candidates state, and idle workers steal those subtrees from busy ones.  Below the
+ * split depth every task runs a plain MrvSearch.  The first task to find a solution
+ * raises a shared flag that stops all the others at their next node. */
+class ParallelSolver
+{
+	final int threads;
+	final int splitDepth;
+	final int rules;
+
+	// Raised by the first task that solves the grid
+	final AtomicBoolean found = new AtomicBoolean();
+
+	// The solved state, written once by the task that raised found
+	volatile Candidates solution;
+
+	// Deadline and node limit shared by all the tasks, null for none
+	Budget budget;
+
+	public ParallelSolver( int threads, int splitDepth, int rules )
+	{
+		this.threads = threads;
+		this.splitDepth = splitDepth;
+		this.rules = rules;
+	}
+
+	// Solve from a propagated state, returns the solved state or null if there is no solution
+	// or the budget ran out, check the budget to tell the two apart
+	public Candidates solve(Candidates root){
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new SearchTask(new Candidates(root), 0));
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return solution;
+	}
+
+	private void publish(Candidates state){
+		if (found.compareAndSet(false, true)) solution = state;
+	}
+
+	// Search of the subtree below a state, forking one task per value above the split depth
+	private class SearchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Candidates state;
+		final int depth;
+
+		SearchTask( Candidates state, int depth )
+		{
+			this.state = state;
+			this.depth = depth;
+		}
+
+		protected void compute(){
+			if (found.get() || (budget!=null && budget.exhausted)) return;
+			Propagator propagator = new Propagator(state, rules);
+			MrvSearch search = new MrvSearch(state, propagator);
+			search.budget = budget;
+
+			// Deep enough, search the rest of the subtree on this thread
+			if (depth >= splitDepth) {
+				search.cancelled = found;
+				if (search.search()) publish(state);
+				return;
+			}
+
+			int cell = search.pickCell();
+			if (cell<0) {
+				publish(state);
+				return;
+			}
+			List<SearchTask> children = new ArrayList<SearchTask>();
+			for (int m=state.cand[cell]; m!=0; m&=m-1) {
+				Candidates child = new Candidates(state);
+				// Dead branches are dropped before they become tasks
+				if (child.place(cell, Integer.numberOfTrailingZeros(m)+1) && new Propagator(child, rules).propagate())
+					children.add(new SearchTask(child, depth+1));
+			}
+			invokeAll(children);
+		}
+	}
+}
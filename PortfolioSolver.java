@@ -0,0 +1,134 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+/* PortfolioSolver races several strategies on the same puzzle, each on its own thread
+ * and its own copy of the grid: the row by row backtrack, the minimum remaining values
+ * search, Dancing Links and randomGuess with a few different seeds.  The first strategy
+ * to solve the grid wins and raises the shared cancelled flag, which the others check
+ * at every node.  A complete strategy proving that there is no solution also ends the
+ * race, randomGuess giving up never does. */
+class PortfolioSolver
+{
+	final int seeds;
+	final int rules;
+
+	// Name of the strategy that ended the race
+	String winner;
+
+	// Deadline and node limit of the whole race, shared by all the strategies, null for none
+	Budget budget;
+
+	public PortfolioSolver( int seeds, int rules )
+	{
+		this.seeds = seeds;
+		this.rules = rules;
+	}
+
+	// Outcome of one strategy
+	private static class Result
+	{
+		final String name;
+		final boolean solved;
+		final boolean complete;
+		final int[][] grid;
+
+		Result( String name, boolean solved, boolean complete, int[][] grid )
+		{
+			this.name = name;
+			this.solved = solved;
+			this.complete = complete;
+			this.grid = grid;
+		}
+	}
+
+	// Race the strategies on the grid of s, copying the winning solution into it
+	// Returns false if a complete strategy proved there is no solution
+	public boolean solve(final Sudoku s){
+		// Rejected here, the race would take a strategy failing on it for one giving up
+		s.geometry.checkValues(s.Grid);
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		List<Callable<Result>> strategies = new ArrayList<Callable<Result>>();
+
+		for (final String engine : new String[] { "backtrack", "mrv" })
+			strategies.add(new Callable<Result>() {
+				public Result call(){
+					Sudoku t = copy(s, engine, cancelled);
+					return new Result(engine, t.solveSudoku(), true, t.Grid);
+				}
+			});
+
+		strategies.add(new Callable<Result>() {
+			public Result call(){
+				int[][] grid = copyGrid(s.Grid);
+				DancingLinks dlx = new DancingLinks(s.SIZE, grid);
+				dlx.cancelled = cancelled;
+				dlx.budget = budget;
+				return new Result("dlx", dlx.solve(), true, grid);
+			}
+		});
+
+		for (int seed=1; seed<=seeds; seed++) {
+			final int runSeed = seed;
+			strategies.add(new Callable<Result>() {
+				public Result call(){
+					Sudoku t = copy(s, "random", cancelled);
+					t.generator = new Random(runSeed);
+					return new Result("random-" + runSeed, t.solveSudoku(), false, t.Grid);
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(strategies.size());
+		CompletionService<Result> race = new ExecutorCompletionService<Result>(pool);
+		try {
+			for (Callable<Result> strategy : strategies) race.submit(strategy);
+			for (int i=0; i<strategies.size(); i++) {
+				Result result;
+				try {
+					result = race.take().get();
+				}
+				catch (ExecutionException e) {
+					continue;
+				}
+				// A cancelled strategy or one out of budget returns unsolved, that's not a proof
+				boolean stopped = cancelled.get() || (budget!=null && budget.exhausted);
+				if (result.solved || (result.complete && !stopped)) {
+					cancelled.set(true);
+					winner = result.name;
+					if (result.solved)
+						for (int r=0; r<result.grid.length; r++)
+							System.arraycopy(result.grid[r], 0, s.Grid[r], 0, result.grid[r].length);
+					return result.solved;
+				}
+			}
+			return false;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			cancelled.set(true);
+			pool.shutdownNow();
+		}
+	}
+
+	// Fresh Sudoku with a copy of the grid, running one engine and sharing the cancelled flag
+	private Sudoku copy(Sudoku s, String engine, AtomicBoolean cancelled){
+		Sudoku t = new Sudoku(s.SIZE);
+		t.Grid = copyGrid(s.Grid);
+		t.engine = engine;
+		t.rules = rules;
+		t.cancelled = cancelled;
+		t.budget = budget;
+		return t;
+	}
+
+	private static int[][] copyGrid(int[][] grid){
+		int[][] copy = new int[grid.length][];
+		for (int r=0; r<grid.length; r++) copy[r] = grid[r].clone();
+		return copy;
+	}
+}
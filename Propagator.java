@@ -0,0 +1,203 @@
+/* Propagator applies the deduction rules of SmartSolve to a Candidates state until
+ * nothing changes anymore.  Every forced value found in a sweep is placed before the
+ * next sweep, and the stronger rules only run once the singles are exhausted.  The
+ * rules are a bitset so that every run can choose which ones to use.  The hidden pairs
+ * and the intersections read a unit through one UnitScan instead of walking its cells
+ * once per value. */
+class Propagator
+{
+	// Rules that can be switched on and off
+	static final int NAKED_SINGLES = 1;
+	static final int HIDDEN_SINGLES = 2;
+	static final int NAKED_PAIRS = 4;
+	static final int HIDDEN_PAIRS = 8;
+	static final int POINTING_PAIRS = 16;
+	static final int BOX_LINE = 32;
+
+	static final int SINGLES = NAKED_SINGLES | HIDDEN_SINGLES;
+	static final int ALL = 63;
+
+	final Candidates c;
+	final int N;
+	int rules;
+
+	// Number of values placed by the singles rules
+	int placements;
+
+	// Number of candidates removed by the pairs, pointing and box-line rules
+	int eliminations;
+
+	// Per rule counters, only updated when attached
+	SolverStats stats;
+
+	// Positions and counts of the values of the unit being swept, created on the first sweep
+	private UnitScan scan;
+
+	public Propagator( Candidates candidates, int rules )
+	{
+		c = candidates;
+		N = candidates.N;
+		this.rules = rules;
+	}
+
+	// Parse a rule list such as "all", "singles" or "singles,pairs,pointing"
+	static int parseRules(String text){
+		int result = 0;
+		for (String word : text.split(",")) {
+			switch (word.trim()) {
+				case "all": result |= ALL; break;
+				case "singles": result |= SINGLES; break;
+				case "naked": result |= NAKED_SINGLES; break;
+				case "hidden": result |= HIDDEN_SINGLES; break;
+				case "pairs": result |= NAKED_PAIRS | HIDDEN_PAIRS; break;
+				case "nakedpairs": result |= NAKED_PAIRS; break;
+				case "hiddenpairs": result |= HIDDEN_PAIRS; break;
+				case "pointing": result |= POINTING_PAIRS; break;
+				case "boxline": result |= BOX_LINE; break;
+				case "none": break;
+				default: throw new IllegalArgumentException("Unknown rule: " + word);
+			}
+		}
+		return result;
+	}
+
+	// Apply every enabled rule until the state stops changing
+	// Returns false if the grid reached a contradiction
+	public boolean propagate(){
+		if (stats!=null) stats.propagations++;
+		while (true) {
+			if (!applySingles()) return false;
+			if (c.numberCellSolved==c.cells) return true;
+
+			// Every change goes on the trail, so the trail size tells if a sweep did something
+			int before = c.mark();
+			if (scan==null) scan = UnitScan.create(N);
+			for (int u=0; u<3*N; u++) {
+				if ((rules & NAKED_PAIRS) != 0) nakedPairs(u);
+				boolean intersect = (rules & (u<2*N ? BOX_LINE : POINTING_PAIRS)) != 0;
+				if ((rules & HIDDEN_PAIRS) == 0 && !intersect) continue;
+				scan.scan(c.cand, c.units, u*N);
+				if ((rules & HIDDEN_PAIRS) != 0) hiddenPairs(u);
+				if (intersect) intersections(u);
+				if (c.contradiction) return false;
+			}
+			if (c.mark()==before) return true;
+		}
+	}
+
+	// Place every queued naked and hidden single, including the ones they uncover
+	private boolean applySingles(){
+		while (!c.contradiction) {
+			int move = -1;
+			if ((rules & NAKED_SINGLES) != 0) move = c.nextNakedSingle();
+			if (move>=0) {
+				if (stats!=null) stats.nakedSingles++;
+			}
+			else if ((rules & HIDDEN_SINGLES) != 0) {
+				move = c.nextHiddenSingle();
+				if (move>=0 && stats!=null) {
+					if (c.lastHiddenUnit<N) stats.hiddenSinglesRow++;
+					else if (c.lastHiddenUnit<2*N) stats.hiddenSinglesColumn++;
+					else stats.hiddenSinglesBox++;
+				}
+			}
+			if (move<0) return true;
+			c.place(move/N, move%N+1);
+			placements++;
+		}
+		return false;
+	}
+
+	// Remove candidates from a cell and count them for the rule that found them
+	private void eliminate(int cell, int bits, int rule){
+		int removed = c.cand[cell] & bits;
+		if (removed==0) return;
+		int n = Integer.bitCount(removed);
+		eliminations += n;
+		if (stats!=null) {
+			if (rule==NAKED_PAIRS) stats.nakedPairs += n;
+			else if (rule==HIDDEN_PAIRS) stats.hiddenPairs += n;
+			else if (rule==POINTING_PAIRS) stats.pointingPairs += n;
+			else stats.boxLine += n;
+		}
+		c.eliminate(cell, removed);
+	}
+
+	// Two cells of a unit with the same two candidates own those values, remove them from the rest of the unit
+	private void nakedPairs(int u){
+		int[] units = c.units;
+		int base = u*N;
+		for (int i=0; i<N; i++) {
+			int m = c.cand[units[base+i]];
+			if (Integer.bitCount(m)!=2) continue;
+			for (int j=i+1; j<N; j++)
+				if (c.cand[units[base+j]]==m) {
+					for (int x=0; x<N; x++)
+						if (x!=i && x!=j) eliminate(units[base+x], m, NAKED_PAIRS);
+					break;
+				}
+		}
+	}
+
+	// Two values that can only go in the same two cells of a unit, remove every other candidate from those cells
+	// The unit is scanned again after every pair that removed something, and the values still to check are
+	// taken from the new scan, so that a value left on two cells by an earlier pair is checked too
+	private void hiddenPairs(int u){
+		int[] positions = scan.positions;
+		int pairs = scan.exactlyTwice();
+		while (pairs!=0) {
+			int d1 = Integer.numberOfTrailingZeros(pairs);
+			int pos1 = positions[d1];
+			int rest = pairs & (-2<<d1);
+			while (rest!=0) {
+				int d2 = Integer.numberOfTrailingZeros(rest);
+				rest &= rest-1;
+				if (positions[d2]!=pos1) continue;
+				int pair = (1<<d1) | (1<<d2);
+				int before = c.mark();
+				for (int p=pos1; p!=0; p&=p-1)
+					eliminate(c.units[u*N+Integer.numberOfTrailingZeros(p)], ~pair, HIDDEN_PAIRS);
+				if (c.mark()==before) continue;
+				// The values of the pair keep their two cells, the others may have lost some
+				scan.scan(c.cand, c.units, u*N);
+				rest = scan.exactlyTwice() & (-2<<d2);
+			}
+			pairs = scan.exactlyTwice() & (-2<<d1);
+		}
+	}
+
+	// Pointing pairs (u is a box) and box-line reduction (u is a row or column):
+	// if every cell of u that can take a value also lies in another unit, the value
+	// must go in that intersection and is removed from the rest of the other unit
+	// The positions of a box go row by row, SIZE cells per row, and the positions of a
+	// row or column cross the boxes SIZE at a time, so the shared units are read off
+	// the positions of the value with a mask
+	private void intersections(int u){
+		int size = c.SIZE;
+		int segment = (1<<size)-1, column = 0;
+		for (int i=0; i<N; i+=size) column |= 1<<i;
+		// Only the other units change, the positions of u stay as scanned
+		for (int m=scan.once & ~c.placed[u]; m!=0; m&=m-1) {
+			int d = Integer.numberOfTrailingZeros(m);
+			int bit = 1<<d;
+			int p = scan.positions[d];
+			int first = Integer.numberOfTrailingZeros(p);
+			int cell = c.units[u*N+first];
+			boolean inSegment = (p & ~(segment << (first/size*size))) == 0;
+			if (u>=2*N) {
+				if (inSegment) clearOutside(c.unitsOf[cell*3], u, bit);
+				if ((p & ~(column << (first%size))) == 0) clearOutside(c.unitsOf[cell*3+1], u, bit);
+			}
+			else if (inSegment) clearOutside(c.unitsOf[cell*3+2], u, bit);
+		}
+	}
+
+	// Remove a value from the cells of unit v that are not part of unit u
+	private void clearOutside(int v, int u, int bit){
+		for (int i=v*N, end=i+N; i<end; i++) {
+			int cell = c.units[i];
+			if (c.unitsOf[cell*3]!=u && c.unitsOf[cell*3+1]!=u && c.unitsOf[cell*3+2]!=u)
+				eliminate(cell, bit, u>=2*N ? POINTING_PAIRS : BOX_LINE);
+		}
+	}
+}
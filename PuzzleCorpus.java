@@ -0,0 +1,234 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+
+/* PuzzleCorpus is a binary file of puzzles of one size, read without any parsing.  A
+ * 16 byte header:
+ *     "SDKB", version (1 byte), size (1 byte), bits per cell (1 byte), 0, count (8 bytes)
+ * is followed by count records of the same length, one per puzzle: the N*N cells in
+ * row order, each packed on ceil(log2(N+1)) bits from the high bit of the first byte,
+ * 0 for an empty cell, and the record padded to a whole byte.  A 9x9 puzzle takes 41
+ * bytes instead of the 82 of a one line puzzle or the ~290 of the usual format.
+ * The records all have the same length, so the index of the corpus is arithmetic:
+ * puzzle i starts at 16 + i*recordBytes, and there is no table of offsets to store,
+ * read or keep in memory.
+ * The file is memory mapped in chunks of whole records up to 1GB, mapped when a
+ * record in them is first read, so a corpus of any size is streamed or read at random
+ * without loading it.  Reads don't move any position in the buffers and can come from
+ * several threads. */
+class PuzzleCorpus implements Closeable
+{
+	static final int MAGIC = 0x53444B42;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+
+	// Largest chunk mapped at once, rounded down to whole records
+	private static final long CHUNK_BYTES = 1L<<30;
+
+	final int size, N, bits, recordBytes;
+	final long count;
+
+	private final FileChannel file;
+	private final long recordsPerChunk;
+	private final MappedByteBuffer[] chunks;
+
+	// Next puzzle returned by next()
+	private long cursor;
+
+	// Bits needed for the values 0..N
+	static int bitsPerCell(int N){
+		return 32 - Integer.numberOfLeadingZeros(N);
+	}
+
+	// True if the file starts with the magic number of a corpus
+	static boolean isCorpus(String fileName) throws IOException {
+		try (FileChannel in = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			ByteBuffer head = ByteBuffer.allocate(4);
+			while (head.hasRemaining() && in.read(head) >= 0);
+			return !head.hasRemaining() && head.getInt(0) == MAGIC;
+		}
+	}
+
+	public PuzzleCorpus( String fileName ) throws IOException
+	{
+		file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES);
+			while (head.hasRemaining() && file.read(head) >= 0);
+			if (head.hasRemaining() || head.getInt(0) != MAGIC) throw new IOException(fileName + " is not a puzzle corpus");
+			if (head.get(4) != VERSION) throw new IOException(fileName + " is a corpus of version " + head.get(4) + ", expected " + VERSION);
+			size = head.get(5) & 0xff;
+			N = size*size;
+			bits = head.get(6) & 0xff;
+			count = head.getLong(8);
+			if (size<1 || size>10 || bits!=bitsPerCell(N) || count<0) throw new IOException(fileName + " has a corrupt corpus header");
+			recordBytes = (N*N*bits + 7) / 8;
+			// A count too large to address would wrap count*recordBytes round and pass the size check
+			if (count > (Long.MAX_VALUE - HEADER_BYTES) / recordBytes) throw new IOException(fileName + " has a corrupt corpus header");
+			if (file.size() < HEADER_BYTES + count*recordBytes) throw new EOFException(fileName + " ends before its " + count + " puzzles");
+			recordsPerChunk = Math.max(1, CHUNK_BYTES / recordBytes);
+			chunks = new MappedByteBuffer[(int) ((count + recordsPerChunk - 1) / recordsPerChunk)];
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	// Chunk holding a record, mapped the first time
+	private synchronized MappedByteBuffer chunk(int c) throws IOException {
+		if (chunks[c]==null) {
+			long first = c*recordsPerChunk;
+			long records = Math.min(recordsPerChunk, count - first);
+			chunks[c] = file.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first*recordBytes, records*recordBytes);
+		}
+		return chunks[c];
+	}
+
+	// Unpack puzzle i into grid, which has N rows of N cells
+	public void read(long i, int[][] grid) throws IOException {
+		if (i<0 || i>=count) throw new IndexOutOfBoundsException("Puzzle " + i + " of a corpus of " + count);
+		MappedByteBuffer chunk = chunk((int) (i / recordsPerChunk));
+		int at = (int) (i % recordsPerChunk) * recordBytes, end = at + recordBytes;
+		int mask = (1<<bits)-1;
+		// Bits read ahead of the cells, the low pending bits of acc, refilled 32 bits at a time up to the last bytes
+		long acc = 0;
+		int pending = 0;
+		for (int r=0; r<N; r++) {
+			int[] row = grid[r];
+			for (int c=0; c<N; c++) {
+				if (pending < bits) {
+					if (at+4 <= end) {
+						acc = acc<<32 | (chunk.getInt(at) & 0xffffffffL);
+						at += 4;
+						pending += 32;
+					}
+					else {
+						acc = acc<<8 | (chunk.get(at++) & 0xff);
+						pending += 8;
+					}
+				}
+				pending -= bits;
+				int value = (int) (acc >>> pending) & mask;
+				// The bits of a cell can hold up to 2^bits-1, 15 for a 9x9 grid
+				if (value > N) throw new IOException("Puzzle " + i + " of the corpus has a cell value of " + value + ", the values go up to " + N);
+				row[c] = value;
+			}
+		}
+	}
+
+	// Puzzle i in a new grid, answered on one line like the one line puzzles
+	public PuzzleReader.Puzzle get(long i) throws IOException {
+		int[][] grid = new int[N][N];
+		read(i, grid);
+		return new PuzzleReader.Puzzle(size, grid, true);
+	}
+
+	// The puzzles in order from the first or the last seek, null after the last one
+	public PuzzleReader.Puzzle next() throws IOException {
+		return cursor < count ? get(cursor++) : null;
+	}
+
+	// Make puzzle i the next one returned by next()
+	public void seek(long i){
+		cursor = Math.max(0, Math.min(i, count));
+	}
+
+	// Index of the next puzzle returned by next()
+	public long position(){
+		return cursor;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	// Convert the puzzles of a text input, all of the same size, into a new corpus and return their number
+	static long pack(PuzzleReader in, String fileName) throws IOException {
+		PuzzleReader.Puzzle puzzle = in.next();
+		if (puzzle==null) throw new IOException("The input holds no Sudoku puzzle");
+		try (Writer out = new Writer(fileName, puzzle.size)) {
+			for (; puzzle!=null; puzzle = in.next()) {
+				if (puzzle.size != out.size) throw new IOException("Puzzle " + (out.count+1) + " has size " + puzzle.size + ", the corpus holds size " + out.size);
+				out.write(puzzle.grid);
+			}
+			return out.count;
+		}
+	}
+
+	// Write every puzzle of the corpus in the usual text format, which PuzzleReader reads back
+	void unpack(PuzzleWriter out) throws IOException {
+		int[][] grid = new int[N][N];
+		for (long i=0; i<count; i++) {
+			read(i, grid);
+			out.writeNumber(size);
+			out.write('\n');
+			out.writeGrid(size, grid);
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/* Writer appends puzzles of one size to a new corpus through a 64KB buffer, the
+	 * count in the header is written when it is closed. */
+	static class Writer implements Closeable
+	{
+		final int size, N, bits, recordBytes;
+		long count;
+
+		private final FileChannel file;
+		private final ByteBuffer buf = ByteBuffer.allocate(1<<16);
+
+		public Writer( String fileName, int size ) throws IOException
+		{
+			if (size<1 || size>10) throw new IOException("A corpus holds puzzles of size 1 to 10, got " + size);
+			this.size = size;
+			N = size*size;
+			bits = bitsPerCell(N);
+			recordBytes = (N*N*bits + 7) / 8;
+			file = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			buf.putInt(MAGIC).put((byte) VERSION).put((byte) size).put((byte) bits).put((byte) 0).putLong(0);
+		}
+
+		private void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) file.write(buf);
+			buf.clear();
+		}
+
+		// Pack one puzzle, its values must be 0 to N
+		public void write(int[][] grid) throws IOException {
+			for (int r=0; r<N; r++)
+				for (int c=0; c<N; c++)
+					if (grid[r][c]<0 || grid[r][c]>N) throw new IOException("Cell value " + grid[r][c] + " out of range for a grid of " + N);
+			if (buf.remaining() < recordBytes) flush();
+			long acc = 0;
+			int pending = 0;
+			for (int r=0; r<N; r++)
+				for (int c=0; c<N; c++) {
+					acc = acc<<bits | grid[r][c];
+					pending += bits;
+					if (pending >= 8) {
+						pending -= 8;
+						buf.put((byte) (acc >>> pending));
+					}
+				}
+			if (pending > 0) buf.put((byte) (acc << (8-pending)));
+			count++;
+		}
+
+		// Write the last records and the count
+		public void close() throws IOException {
+			try {
+				flush();
+				ByteBuffer total = ByteBuffer.allocate(8).putLong(0, count);
+				while (total.hasRemaining()) file.write(total, 8 + total.position());
+			}
+			finally {
+				file.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,298 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+
+/* PuzzleGenerator makes graded puzzles for load tests and benchmark corpora:
+ * 1. Fill a random full grid: the boxes on the diagonal share no unit, so each gets a
+ *    random permutation, and the candidates search completes the rest
+ * 2. Remove the clues in random order, putting a clue back as soon as the puzzle has
+ *    more than one solution.  The full grid is already one solution, so the puzzle
+ *    stays unique if no solution has another value in the emptied cell: that is one
+ *    search for a single solution with the value ruled out, not a count up to 2.  The
+ *    singles alone make that search the fastest, the stronger rules cost more per node
+ *    than they save.  On 16x16 and 25x25 grids a check taking more than a few search
+ *    nodes puts the clue back too, which keeps the generation fast at the cost of a
+ *    few more clues
+ * 3. Grade the puzzle by the weakest set of rules solving it without any search:
+ *    veryEasy (naked singles), easy (all singles), medium (and pairs), hard (and
+ *    pointing pairs and box-line reduction), veryHard if it still needs a search, with
+ *    the number of search nodes, and extreme if that search runs out of gradeNodes:
+ *    a near half empty grid of 36x36 or more can keep a search going for hours
+ * Above 25x25 a uniqueness check per clue would cost a full load of a grid of up to
+ * 10,000 cells, so the benchmark puzzles of those sizes are made another way: the full
+ * grid is a shuffled pattern grid, the fraction holes of its cells is emptied at random,
+ * and the puzzle is only known to have at least one solution.  They are graded with the
+ * singles of WideSearch, the only rules it has, and written as the size followed by the
+ * numbers on one line, which PuzzleReader reads as the usual format.
+ * Every puzzle comes from its own seed, so a run is repeatable whatever the number of
+ * threads.  The puzzles are written in order as one line puzzles (see PuzzleReader)
+ * followed by their grade, clues and search nodes. */
+class PuzzleGenerator
+{
+	static final String[] GRADES = { "veryEasy", "easy", "medium", "hard", "veryHard", "extreme" };
+	static final int VERY_HARD = 4, EXTREME = 5;
+
+	// Rules that must solve a puzzle of each grade but veryHard without a search
+	private static final int[] GRADE_RULES = {
+		Propagator.NAKED_SINGLES,
+		Propagator.SINGLES,
+		Propagator.SINGLES | Propagator.NAKED_PAIRS | Propagator.HIDDEN_PAIRS,
+		Propagator.ALL
+	};
+
+	final int size, threads;
+	final long seed;
+
+	// Search nodes allowed to every uniqueness check, 0 for no limit
+	long nodeBudget;
+
+	// Search nodes allowed to the grading search of a puzzle left open by every rule, beyond them it is extreme
+	long gradeNodes;
+
+	// Fraction of the cells emptied in the puzzles bigger than 25x25
+	double holes = 0.3;
+
+	// Puzzles made of every grade
+	final int[] gradeCount = new int[GRADES.length];
+
+	public PuzzleGenerator( int size, int threads, long seed )
+	{
+		this.size = size;
+		this.threads = threads;
+		this.seed = seed;
+		nodeBudget = size<=3 ? 0 : 50;
+		// A node visits every cell to pick the next one, so the budget shrinks with the grid: a few seconds at most
+		gradeNodes = size<=5 ? 200000 : 100000;
+	}
+
+	// State kept by every worker thread, the wide state instead of the candidates one above 25x25
+	private static class Worker
+	{
+		final Sudoku sudoku;
+		Candidates candidates;
+		Propagator propagator;
+		MrvSearch mrv;
+		WideCandidates wide;
+		WideSearch wideSearch;
+
+		Worker( int size )
+		{
+			sudoku = new Sudoku(size);
+			if (size>5) {
+				wide = new WideCandidates(size);
+				wideSearch = new WideSearch(wide);
+				return;
+			}
+			candidates = new Candidates(size);
+			propagator = new Propagator(candidates, Propagator.ALL);
+			mrv = new MrvSearch(candidates, propagator);
+		}
+	}
+
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+
+	// A graded puzzle, made on a worker thread and written out in its turn
+	static class Generated
+	{
+		final int[][] grid;
+		final int grade, clues;
+		final long nodes;
+
+		Generated( int[][] grid, int grade, int clues, long nodes )
+		{
+			this.grid = grid;
+			this.grade = grade;
+			this.clues = clues;
+			this.nodes = nodes;
+		}
+	}
+
+	// Make count puzzles and write them to out in the order of their seeds
+	public void run(int count, PuzzleWriter out) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Generated>> pending = new ArrayDeque<Future<Generated>>();
+		int window = 4*threads;
+		long startTime = System.nanoTime();
+		try {
+			for (int i=0; i<count; i++) {
+				if (pending.size() >= window) write(pending.poll().get(), out);
+				final long puzzleSeed = seed + i;
+				pending.add(pool.submit(new Callable<Generated>() {
+					public Generated call(){
+						return generate(puzzleSeed);
+					}
+				}));
+			}
+			while (!pending.isEmpty()) write(pending.poll().get(), out);
+			out.flush();
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - startTime)/1e9;
+		StringBuilder grades = new StringBuilder();
+		for (int g=0; g<GRADES.length; g++) grades.append(g==0 ? "" : ", ").append(GRADES[g]).append(' ').append(gradeCount[g]);
+		System.err.println("Generated " + count + " puzzles in " + seconds + "s (" + (long) (count*60/seconds)
+			+ " puzzles/min): " + grades);
+	}
+
+	// One line puzzle followed by its grade, clues and search nodes
+	private void write(Generated g, PuzzleWriter out) throws IOException {
+		out.writeLine(size, g.grid);
+		out.write(' ');
+		out.write(GRADES[g.grade]);
+		out.write(" clues=");
+		out.writeNumber(g.clues);
+		out.write(" nodes=");
+		out.writeNumber(g.nodes);
+		out.write('\n');
+	}
+
+	// Make and grade the puzzle of one seed
+	Generated generate(long puzzleSeed){
+		Worker w = workers.get();
+		if (w==null) {
+			w = new Worker(size);
+			workers.set(w);
+		}
+		Random random = new Random(puzzleSeed);
+		int[][] grid;
+		int clues, grade;
+		long nodes;
+		if (size>5) {
+			grid = patternGrid(random);
+			clues = removeRandom(grid, random);
+			grade = gradeWide(w, grid);
+			nodes = w.wideSearch.nodes;
+		}
+		else {
+			grid = fullGrid(w.sudoku, random);
+			clues = removeClues(w, grid, random);
+			grade = grade(w, grid);
+			nodes = w.mrv.nodes;
+		}
+		synchronized (this) {
+			gradeCount[grade]++;
+		}
+		return new Generated(grid, grade, clues, nodes);
+	}
+
+	// Random order of 0..n-1 (Fisher-Yates shuffle)
+	private static int[] permutation(int n, Random random){
+		int[] order = new int[n];
+		for (int i=0; i<n; i++) order[i] = i;
+		for (int i=n-1; i>0; i--) {
+			int j = random.nextInt(i+1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		return order;
+	}
+
+	// A random full grid: random diagonal boxes completed by the first solution of the search
+	// Some diagonals of a 4x4 grid can't be completed, those are drawn again
+	private int[][] fullGrid(Sudoku s, Random random){
+		int N = size*size;
+		int[][] grid = new int[N][N];
+		do {
+			drawDiagonal(grid, random);
+			s.reset(grid);
+		}
+		while (s.countSolutions(1) == 0);
+		for (int r=0; r<N; r++) System.arraycopy(s.Grid[r], 0, grid[r], 0, N);
+		return grid;
+	}
+
+	private void drawDiagonal(int[][] grid, Random random){
+		int N = size*size;
+		for (int b=0; b<size; b++) {
+			int[] values = permutation(N, random);
+			for (int k=0; k<N; k++) grid[b*size + k/size][b*size + k%size] = values[k]+1;
+		}
+	}
+
+	// A random full grid without a search: the pattern grid (SIZE*(r%SIZE) + r/SIZE + c) mod N, which
+	// is valid, with its digits relabeled, and its bands, stacks and the lines inside them shuffled
+	private int[][] patternGrid(Random random){
+		int N = size*size;
+		int[] digits = permutation(N, random), rows = lines(random), cols = lines(random);
+		int[][] grid = new int[N][N];
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				grid[r][c] = digits[(size*(rows[r]%size) + rows[r]/size + cols[c]) % N] + 1;
+		return grid;
+	}
+
+	// Random order of the N lines that keeps the lines of a band together
+	private int[] lines(Random random){
+		int[] bands = permutation(size, random), order = new int[size*size];
+		for (int b=0; b<size; b++) {
+			int[] inside = permutation(size, random);
+			for (int i=0; i<size; i++) order[b*size+i] = bands[b]*size + inside[i];
+		}
+		return order;
+	}
+
+	// Empty the fraction holes of the cells in random order, returns the clues left
+	private int removeRandom(int[][] grid, Random random){
+		int N = size*size, cells = N*N;
+		int[] order = permutation(cells, random);
+		int emptied = (int) Math.round(holes*cells);
+		for (int i=0; i<emptied; i++) grid[order[i]/N][order[i]%N] = 0;
+		return cells - emptied;
+	}
+
+	// Empty the cells in random order while the solution stays unique, returns the clues left
+	private int removeClues(Worker w, int[][] grid, Random random){
+		int N = size*size, cells = N*N;
+		int[] order = permutation(cells, random);
+
+		int clues = cells;
+		for (int i=0; i<cells; i++) {
+			int r = order[i]/N, c = order[i]%N;
+			int value = grid[r][c];
+			grid[r][c] = 0;
+			w.candidates.load(grid);
+			w.propagator.rules = Propagator.SINGLES;
+			w.mrv.budget = nodeBudget>0 ? new Budget(0, nodeBudget) : null;
+			// A check out of budget proves nothing, the clue stays
+			boolean unique = !w.candidates.eliminate(order[i], 1<<(value-1))
+				|| (w.mrv.count(1) == 0 && (w.mrv.budget==null || !w.mrv.budget.exhausted));
+			if (unique) clues--;
+			else grid[r][c] = value;
+		}
+		return clues;
+	}
+
+	// Index of the grade of the puzzle in GRADES, the search nodes of a veryHard or extreme one are left in mrv.nodes
+	private int grade(Worker w, int[][] grid){
+		w.mrv.nodes = 0;
+		for (int g=0; g<GRADE_RULES.length; g++) {
+			w.candidates.load(grid);
+			w.propagator.rules = GRADE_RULES[g];
+			w.propagator.propagate();
+			if (w.candidates.numberCellSolved == w.candidates.cells) return g;
+		}
+		// Still open with every rule, count the nodes the search needs from there
+		w.mrv.budget = new Budget(0, gradeNodes);
+		w.mrv.search();
+		return w.mrv.budget.exhausted ? EXTREME : VERY_HARD;
+	}
+
+	// Grade of a puzzle bigger than 25x25 by the singles alone: veryEasy, easy, veryHard or extreme,
+	// the search nodes of the last two are left in wideSearch.nodes
+	private int gradeWide(Worker w, int[][] grid){
+		w.wideSearch.nodes = 0;
+		for (int g=0; g<2; g++) {
+			w.wide.load(grid);
+			w.wideSearch.rules = GRADE_RULES[g];
+			w.wideSearch.propagate();
+			if (w.wide.numberCellSolved == w.wide.cells) return g;
+		}
+		w.wideSearch.budget = new Budget(0, gradeNodes);
+		w.wideSearch.search();
+		return w.wideSearch.budget.exhausted ? EXTREME : VERY_HARD;
+	}
+}
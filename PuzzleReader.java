@@ -0,0 +1,214 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+
+/* PuzzleReader parses puzzles straight from the bytes of the input, without building a
+ * String per word.  A file is memory mapped, any other stream goes through one 64KB
+ * buffer.  It reads two formats, which can be mixed in the same input:
+ * 1. The usual format: the size followed by the N*N cells, 'x' or 0 for the empty
+ *    ones.  Words that are not integers ('|', '---', comments) are ignored.
+ * 2. One puzzle per line of N*N characters for N = 4, 9, 16 or 25: '.' or '0' for the
+ *    empty cells, '1'-'9' and then 'A' (10), 'B' (11), ... for the values.  Anything
+ *    after a space on the same line is a comment, like the grade of PuzzleGenerator.
+ * A binary corpus file (see PuzzleCorpus) is read through the corpus instead, record
+ * by record without any parsing, and its puzzles are answered on one line. */
+class PuzzleReader
+{
+	// A puzzle read from the input
+	static class Puzzle
+	{
+		final int size;
+		final int[][] grid;
+		final boolean oneLine;
+
+		Puzzle( int size, int[][] grid, boolean oneLine )
+		{
+			this.size = size;
+			this.grid = grid;
+			this.oneLine = oneLine;
+		}
+	}
+
+	// Source of the buffer when it has to be refilled, null when the whole file is mapped
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buf;
+	private int pos, limit;
+
+	// True while the next word starts a line, only those can be one line puzzles
+	private boolean lineStart = true;
+
+	// Largest size accepted in the usual format, the grid of a size is allocated before its cells are read
+	int maxSize = 100;
+
+	// Puzzles of a binary corpus file, null for text
+	private final PuzzleCorpus corpus;
+
+	public PuzzleReader( InputStream in )
+	{
+		channel = Channels.newChannel(in);
+		buf = ByteBuffer.allocate(1<<16);
+		corpus = null;
+	}
+
+	private PuzzleReader( ByteBuffer mapped )
+	{
+		channel = null;
+		buf = mapped;
+		limit = mapped.limit();
+		corpus = null;
+	}
+
+	private PuzzleReader( PuzzleCorpus corpus )
+	{
+		channel = null;
+		buf = ByteBuffer.allocate(0);
+		this.corpus = corpus;
+	}
+
+	// Open a corpus file as a corpus, and map a text file if it fits in one buffer, the mapping stays valid once the file is closed
+	static PuzzleReader open(String fileName) throws IOException {
+		if (PuzzleCorpus.isCorpus(fileName)) return new PuzzleReader(new PuzzleCorpus(fileName));
+		try (FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			if (file.size() <= Integer.MAX_VALUE)
+				return new PuzzleReader(file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+		}
+		return new PuzzleReader(new FileInputStream(fileName));
+	}
+
+	// Move the unread bytes to the front of the buffer and read more after them
+	private boolean fill() throws IOException {
+		if (channel==null || limit-pos==buf.capacity()) return false;
+		byte[] a = buf.array();
+		System.arraycopy(a, pos, a, 0, limit-pos);
+		limit -= pos;
+		pos = 0;
+		buf.clear();
+		buf.position(limit);
+		int n = channel.read(buf);
+		if (n<0) return false;
+		limit += n;
+		return true;
+	}
+
+	// Next byte without consuming it, -1 at the end of the input
+	private int peek() throws IOException {
+		if (pos>=limit && !fill()) return -1;
+		return buf.get(pos) & 0xff;
+	}
+
+	private static boolean isSpace(int ch){
+		return ch==' ' || ch=='\t' || ch=='\r' || ch=='\n';
+	}
+
+	// Skip the white space before the next word, returns false at the end of the input
+	private boolean skipSpace() throws IOException {
+		int ch;
+		while ((ch = peek()) >= 0 && isSpace(ch)) {
+			pos++;
+			lineStart = ch=='\n';
+		}
+		return ch >= 0;
+	}
+
+	// Consume one word: its value, 0 for 'x', -2 if it is not an integer, -1 at the end of the input
+	private int word() throws IOException {
+		if (!skipSpace()) return -1;
+		lineStart = false;
+		long value = 0;
+		boolean number = true;
+		int first = peek(), length = 0, ch;
+		while ((ch = peek()) >= 0 && !isSpace(ch)) {
+			pos++;
+			length++;
+			if (ch<'0' || ch>'9') number = false;
+			else if (value <= Integer.MAX_VALUE) value = value*10 + (ch-'0');
+		}
+		if (length==1 && first=='x') return 0;
+		return number && value <= Integer.MAX_VALUE ? (int) value : -2;
+	}
+
+	// Next integer or 'x' of the input, skipping the words that are not integers, -1 at the end of the input
+	int nextInt() throws IOException {
+		int value;
+		while ((value = word()) == -2);
+		return value;
+	}
+
+	// Value of a character of a one line puzzle, -1 if it can't appear in one
+	private static int cellValue(int ch){
+		if (ch=='.') return 0;
+		if (ch>='0' && ch<='9') return ch-'0';
+		if (ch>='A' && ch<='Z') return ch-'A'+10;
+		if (ch>='a' && ch<='z') return ch-'a'+10;
+		return -1;
+	}
+
+	// Number of cells of the one line puzzle starting at pos, 0 if the first word of the line is not one
+	private int oneLineLength() throws IOException {
+		int length = 0, max = 0;
+		for (int i=pos; ; i++) {
+			if (i>=limit) {
+				int offset = i-pos;
+				boolean more = fill();
+				i = pos+offset;
+				if (!more || i>=limit) break;
+			}
+			int ch = buf.get(i) & 0xff;
+			if (isSpace(ch)) break;
+			int value = cellValue(ch);
+			if (value<0 || ++length > 625) return 0;
+			max = Math.max(max, value);
+		}
+		int n = (int) Math.round(Math.sqrt(length));
+		if (n*n!=length || (n!=4 && n!=9 && n!=16 && n!=25) || max>n) return 0;
+		return length;
+	}
+
+	// Skip the next n puzzles, a corpus goes straight to the puzzle after them
+	void skip(long n) throws IOException {
+		if (corpus!=null) corpus.seek(corpus.position() + n);
+		else for (long i=0; i<n && next()!=null; i++);
+	}
+
+	// Read the next puzzle, or null at the end of the input
+	Puzzle next() throws IOException {
+		if (corpus!=null) return corpus.next();
+		while (skipSpace()) {
+			if (lineStart) {
+				int length = oneLineLength();
+				if (length>0) return parseOneLine(length);
+			}
+			int size = word();
+			// Skip the words that are not integers before the size
+			if (size==-2) continue;
+			if (size<1 || size>maxSize) throw new IOException("The Sudoku puzzle size must be between 1 and " + maxSize + ", got " + size);
+
+			int n = size*size;
+			int[][] grid = new int[n][n];
+			for (int r=0; r<n; r++)
+				for (int c=0; c<n; c++) {
+					int value = nextInt();
+					if (value<0) throw new EOFException("The input ends in the middle of a puzzle");
+					// The solvers keep the values in bitsets, where a value above N would stand for another one
+					if (value>n) throw new IOException("The cell value must be between 0 and " + n + ", got " + value);
+					grid[r][c] = value;
+				}
+			return new Puzzle(size, grid, false);
+		}
+		return null;
+	}
+
+	// Read the cells of a one line puzzle and skip the comment after them
+	private Puzzle parseOneLine(int length) throws IOException {
+		int n = length==16 ? 4 : length==81 ? 9 : length==256 ? 16 : 25;
+		int[][] grid = new int[n][n];
+		for (int i=0; i<length; i++)
+			grid[i/n][i%n] = cellValue(buf.get(pos++) & 0xff);
+		int ch;
+		while ((ch = peek()) >= 0 && ch!='\n') pos++;
+		lineStart = false;
+		return new Puzzle((int) Math.round(Math.sqrt(n)), grid, true);
+	}
+}
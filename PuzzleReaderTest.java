@@ -0,0 +1,53 @@
+import java.io.*;
+import java.nio.charset.*;
+
+
+/* PuzzleReaderTest reads small inputs of both formats and checks the puzzles, or the
+ * error, that PuzzleReader makes of them.  Like SolveSessionTest it needs no test
+ * framework: it prints OK, or the first check that failed and exits with status 1.
+ * Usage: java PuzzleReaderTest */
+class PuzzleReaderTest
+{
+	public static void main(String[] args) throws IOException {
+		valuesUpToN();
+		valueAboveN();
+		System.out.println("OK");
+	}
+
+	// A 9x9 grid in the usual format whose first cell is the given word, the other cells empty
+	static PuzzleReader grid(String first){
+		StringBuilder text = new StringBuilder("3\n").append(first);
+		for (int i=1; i<81; i++) text.append(i%9==0 ? '\n' : ' ').append('x');
+		return new PuzzleReader(new ByteArrayInputStream(text.append('\n').toString().getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	// 0, x and 1 to N are cells of the usual format
+	static void valuesUpToN() throws IOException {
+		check(grid("0").next().grid[0][0] == 0, "0 is an empty cell");
+		check(grid("x").next().grid[0][0] == 0, "x is an empty cell");
+		check(grid("9").next().grid[0][0] == 9, "9 is a value of a 9x9 grid");
+	}
+
+	// A value above N would stand for another value in the bitsets of the solvers, it ends the input
+	static void valueAboveN() throws IOException {
+		String[] values = { "10", "40", "2000000000" };
+		for (String value : values) {
+			try {
+				grid(value).next();
+				check(false, value + " is rejected in a 9x9 grid");
+			}
+			catch (EOFException e) {
+				check(false, value + " is rejected as a value, not as the end of the input");
+			}
+			catch (IOException e) {
+				check(e.getMessage().equals("The cell value must be between 0 and 9, got " + value), "the message names the range, got " + e.getMessage());
+			}
+		}
+	}
+
+	static void check(boolean ok, String what){
+		if (ok) return;
+		System.out.println("Failed: " + what);
+		System.exit(1);
+	}
+}
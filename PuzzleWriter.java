@@ -0,0 +1,143 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+
+/* PuzzleWriter is the output side of PuzzleReader: grids, numbers and text are written
+ * as bytes straight into one 64KB buffer, which goes to the channel in a single write
+ * once it is full or flushed.  No String is built per cell or per line, and the stream
+ * behind it is not locked and flushed on every print.  It writes two formats:
+ * 1. The usual format with the boxes drawn, as the grids are printed after a solve
+ * 2. The one line format of PuzzleReader: one character per cell for N <= 35, and the
+ *    size followed by the numbers for the bigger grids
+ * A writer is not thread safe, the batch and the generator write from one thread. */
+class PuzzleWriter
+{
+	private final WritableByteChannel channel;
+	private final ByteBuffer buf;
+	private final byte[] bytes;
+	private int pos;
+
+	// Digits of the number being written, in reverse order
+	private final byte[] digits = new byte[20];
+
+	// A file stream is written through its own channel, anything else through a channel wrapping it
+	public PuzzleWriter( OutputStream out )
+	{
+		this(out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out));
+	}
+
+	public PuzzleWriter( WritableByteChannel channel )
+	{
+		this.channel = channel;
+		bytes = new byte[1<<16];
+		buf = ByteBuffer.wrap(bytes);
+	}
+
+	// The standard output, without the PrintStream of System.out in between
+	static PuzzleWriter stdout(){
+		return new PuzzleWriter(new FileOutputStream(FileDescriptor.out));
+	}
+
+	// Make room for n more bytes, n is never more than the buffer
+	private void reserve(int n) throws IOException {
+		if (pos+n > bytes.length) flush();
+	}
+
+	// Write the buffered bytes to the channel
+	public void flush() throws IOException {
+		buf.clear();
+		buf.limit(pos);
+		while (buf.hasRemaining()) channel.write(buf);
+		pos = 0;
+	}
+
+	public void write(char ch) throws IOException {
+		reserve(1);
+		bytes[pos++] = (byte) ch;
+	}
+
+	// Text made of ASCII characters, the only ones the formats use
+	public void write(String text) throws IOException {
+		for (int i=0, n=text.length(); i<n; i++) {
+			if (pos==bytes.length) flush();
+			bytes[pos++] = (byte) text.charAt(i);
+		}
+	}
+
+	public void writeNumber(long value) throws IOException {
+		writeNumber(value, 0);
+	}
+
+	// Decimal number padded on the left with spaces to width characters
+	public void writeNumber(long value, int width) throws IOException {
+		reserve(Math.max(20, width));
+		put(value, width);
+	}
+
+	// Same as writeNumber once there is room for it
+	private void put(long value, int width){
+		boolean negative = value<0;
+		int n = 0;
+		do {
+			long q = value/10;
+			digits[n++] = (byte) ('0' + Math.abs(value - q*10));
+			value = q;
+		}
+		while (value!=0);
+		if (negative) digits[n++] = '-';
+		for (int i=n; i<width; i++) bytes[pos++] = ' ';
+		while (n>0) bytes[pos++] = digits[--n];
+	}
+
+	// The grid in the usual format, with '|' between the boxes of a row and a dashed line between bands
+	// Room is made once per row, the cells are then put in the buffer without any check
+	public void writeGrid(int size, int[][] grid) throws IOException {
+		int N = size*size;
+		// Number of digits necessary to write every number of the grid
+		int width = 1;
+		for (int n=N; n>=10; n/=10) width++;
+		int lineLength = (width + 1) * N + 2 * size - 3;
+		for (int i=0; i<N; i++) {
+			reserve(lineLength + 3);
+			for (int j=0; j<N; j++) {
+				put(grid[i][j], width);
+				if (j<N-1 && (j+1)%size==0) {
+					bytes[pos++] = ' ';
+					bytes[pos++] = '|';
+				}
+				bytes[pos++] = ' ';
+			}
+			bytes[pos++] = '\n';
+			if (i<N-1 && (i+1)%size==0) {
+				reserve(lineLength + 1);
+				Arrays.fill(bytes, pos, pos+lineLength, (byte) '-');
+				pos += lineLength;
+				bytes[pos++] = '\n';
+			}
+		}
+	}
+
+	// The grid on one line, without the line break: '1'-'9' then 'A' for 10 and so on, or the
+	// size followed by the numbers separated by spaces for grids too big for letters
+	public void writeLine(int size, int[][] grid) throws IOException {
+		int N = size*size;
+		if (N>35) {
+			writeNumber(size);
+			for (int i=0; i<N; i++)
+				for (int j=0; j<N; j++) {
+					write(' ');
+					writeNumber(grid[i][j]);
+				}
+			return;
+		}
+		for (int i=0; i<N; i++) {
+			reserve(N);
+			for (int j=0; j<N; j++) {
+				int value = grid[i][j];
+				bytes[pos++] = (byte) (value<10 ? '0' + value : 'A' + value - 10);
+			}
+		}
+	}
+}
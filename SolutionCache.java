@@ -0,0 +1,111 @@
+import java.util.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+
+/* SolutionCache keeps the solutions of solved puzzles under their canonical form (see
+ * CanonicalForm), so a repeated puzzle, or one equal to a cached puzzle up to the
+ * symmetries of the grid, is answered without a search.  It is a least recently used
+ * map bounded by the memory of its entries rather than their number, as a 25x25 entry
+ * weighs about 80 times a 9x9 one.  With a file, every new solution is appended to it
+ * and the file is read back when the cache is created.  One cache can be shared by
+ * all the workers of a batch. */
+class SolutionCache
+{
+	// Approximate weight of an entry: the key and the solution strings plus the map node
+	private static int weight(String key){
+		return 2*key.length() + 112;
+	}
+
+	final long maxBytes;
+	private long bytes;
+	private final LinkedHashMap<String,String> entries = new LinkedHashMap<String,String>(256, 0.75f, true);
+
+	// Appends the new solutions, null without a file
+	private Writer store;
+
+	// Lookups answered from the cache and the ones that were not, and the time spent in lookups with canonicalization
+	long hits, misses, lookupNanos;
+
+	public SolutionCache( long maxBytes )
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	// Cache backed by a file of "key<TAB>solution" lines, the solutions already in it are loaded first
+	public SolutionCache( long maxBytes, String fileName ) throws IOException
+	{
+		this(maxBytes);
+		File file = new File(fileName);
+		if (file.exists()) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					int tab = line.indexOf('\t');
+					if (tab > 0 && line.length() == 2*tab+1) add(line.substring(0, tab), line.substring(tab+1));
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		store = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+	}
+
+	private void add(String key, String solution){
+		if (entries.put(key, solution) == null) bytes += weight(key);
+		// Evict the least recently used entries until the cache fits again
+		Iterator<Map.Entry<String,String>> eldest = entries.entrySet().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			bytes -= weight(eldest.next().getKey());
+			eldest.remove();
+		}
+	}
+
+	// Write the cached solution of the puzzle into grid, returns false if it is not cached
+	public synchronized boolean lookup(CanonicalForm form, int[][] grid){
+		long startTime = System.nanoTime();
+		String solution = entries.get(form.key);
+		if (solution != null) {
+			form.decode(solution, grid);
+			hits++;
+		}
+		else misses++;
+		lookupNanos += form.nanos + System.nanoTime() - startTime;
+		return solution != null;
+	}
+
+	// Remember the solution of the puzzle the form was built from
+	public synchronized void put(CanonicalForm form, int[][] solution){
+		if (entries.containsKey(form.key)) return;
+		String encoded = form.encode(solution);
+		add(form.key, encoded);
+		if (store != null) {
+			try {
+				store.write(form.key);
+				store.write('\t');
+				store.write(encoded);
+				store.write('\n');
+				store.flush();
+			}
+			catch (IOException e) {
+				// Keep serving from memory if the file can't be written
+				System.err.println("Error: Solution cache file: " + e.getMessage());
+				store = null;
+			}
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		if (store != null) store.close();
+		store = null;
+	}
+
+	public synchronized String report(){
+		long lookups = hits + misses;
+		return "Cache: " + hits + " hits of " + lookups + " lookups ("
+			+ (lookups == 0 ? 0 : 100*hits/lookups) + "%), " + entries.size() + " entries, "
+			+ bytes/1024 + "KB, " + (lookups == 0 ? 0 : lookupNanos/lookups/1000.0) + "us per lookup";
+	}
+}
@@ -0,0 +1,33 @@
+/* SolveResult is what a solve hands back to batch and service callers instead of only
+ * a printed grid: how the engine ended and, when it found one, a copy of the solution.
+ * TIMEOUT covers every search stopped before it could finish (cancelled by another
+ * strategy or out of budget), so it says nothing about whether a solution exists. */
+class SolveResult
+{
+	enum Status { SOLVED, UNSAT, TIMEOUT }
+
+	final Status status;
+
+	// The solved grid, null unless status is SOLVED
+	final int[][] grid;
+
+	// Engine that produced the result, and the time it took in nanoseconds
+	final String engine;
+	final long nanos;
+
+	// Cells holding a value and search nodes charged to the budget when a search stopped, see Budget
+	int filled;
+	long nodes;
+
+	SolveResult( Status status, int[][] grid, String engine, long nanos )
+	{
+		this.status = status;
+		this.grid = grid;
+		this.engine = engine;
+		this.nanos = nanos;
+	}
+
+	boolean solved(){
+		return status == Status.SOLVED;
+	}
+}
@@ -0,0 +1,216 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+
+
+/* SolveServer keeps a JVM and its solvers warm between requests: it listens on a local
+ * TCP port and answers every puzzle sent to it in the text formats of PuzzleReader,
+ * with the same text as -batch (see BatchSolver).  A connection can send any number of
+ * puzzles, every answer is written as soon as it is known.  Connections only read,
+ * wait and write, so each one gets its own thread: a virtual thread when the JVM has
+ * them (Java 21 and later), a platform thread otherwise.  The solving is left to a
+ * fixed pool of workers, one per core, fed by a bounded queue:
+ * 1. A connection puts its puzzle in the queue and waits for the answer.  Once the
+ *    queue is full it waits before putting, stops reading its socket, and the client
+ *    is held back by TCP itself
+ * 2. A worker takes every puzzle waiting, up to a micro-batch, in one go, solves them
+ *    one after the other with the Sudoku it keeps for their size, and wakes up their
+ *    connections.  Under load a worker pays the hand over once per batch
+ * The time from a puzzle entering the queue to its answer being written is recorded,
+ * and the throughput with the p50 and p99 latency is printed on the standard error
+ * every few seconds while there is traffic. */
+class SolveServer
+{
+	final int port;
+	final int workers;
+
+	// Puzzles waiting for a worker, a connection blocks once it is full
+	final int queueCapacity;
+
+	// Most puzzles a worker takes from the queue at once
+	int maxBatch = 16;
+
+	// Seconds between two reports, 0 for none
+	int reportSeconds = 10;
+
+	// Time allowed to a request when neither -timeout nor -nodes is given, so that a puzzle with no end
+	// of search (no solution under dlx or random, a hostile one) doesn't hold a worker for good
+	static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+	// Solves the puzzles and writes the answers, its options apply to every request
+	final BatchSolver solver;
+
+	private final ArrayBlockingQueue<Request> queue;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private ServerSocket serverSocket;
+
+	public SolveServer( int port, BatchSolver solver )
+	{
+		this.port = port;
+		this.solver = solver;
+		if (solver.timeoutMillis==0 && solver.maxNodes==0) solver.timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+		workers = solver.threads;
+		queueCapacity = 64*workers;
+		queue = new ArrayBlockingQueue<Request>(queueCapacity);
+	}
+
+	// Puzzle in flight for one connection, reused for all its puzzles since it sends them one at a time
+	private static class Request
+	{
+		PuzzleReader.Puzzle puzzle;
+		final BatchSolver.Slot slot = new BatchSolver.Slot();
+		long start;
+
+		// Error thrown by the solver instead of an outcome, null if there is none
+		Throwable failure;
+
+		// Released by the worker once the slot holds the outcome
+		final Semaphore done = new Semaphore(0);
+	}
+
+	// Start the workers and accept connections until the socket is closed
+	public void run() throws IOException {
+		serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		for (int i=0; i<workers; i++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run(){
+					work();
+				}
+			}, "solver-" + i);
+			worker.setDaemon(true);
+			worker.start();
+		}
+		if (reportSeconds > 0) startReports();
+		System.err.println("Serving on " + serverSocket.getLocalSocketAddress() + " with " + workers + " workers");
+		ExecutorService connections = connectionThreads();
+		try {
+			while (!serverSocket.isClosed()) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				}
+				catch (SocketException e) {
+					// Closed by close()
+					break;
+				}
+				connections.execute(new Runnable() {
+					public void run(){
+						serve(socket);
+					}
+				});
+			}
+		}
+		finally {
+			connections.shutdownNow();
+		}
+	}
+
+	// Stop accepting connections, run() then returns
+	public void close() throws IOException {
+		if (serverSocket != null) serverSocket.close();
+	}
+
+	// A virtual thread per connection when the JVM has them, looked up by name so the code still compiles and runs on Java 17
+	static ExecutorService connectionThreads(){
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r, "connection");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	// Read the puzzles of one connection and answer them in order until the client closes it
+	private void serve(Socket socket){
+		Request request = new Request();
+		try (Socket s = socket) {
+			s.setTcpNoDelay(true);
+			PuzzleReader in = new PuzzleReader(s.getInputStream());
+			// A client could otherwise make the server allocate 400MB with a single "100", the solvers go up to 10
+			in.maxSize = 10;
+			PuzzleWriter out = new PuzzleWriter(s.getOutputStream());
+			try {
+				while ((request.puzzle = in.next()) != null) {
+					request.start = System.nanoTime();
+					queue.put(request);
+					request.done.acquire();
+					if (request.failure != null) {
+						out.write("Error: " + request.failure + ".\n");
+						request.failure = null;
+					}
+					else solver.write(request.slot, out);
+					out.flush();
+					latency.record(System.nanoTime() - request.start);
+				}
+			}
+			catch (IOException e) {
+				// A malformed puzzle ends the connection the way it ends a run of main
+				out.write("Error: " + e.getMessage() + ".\n");
+				out.flush();
+			}
+		}
+		catch (IOException | InterruptedException e) {
+			// The client went away or the server is closing, nothing to answer
+		}
+	}
+
+	// Take the waiting puzzles by micro-batches and solve them, on a worker thread
+	private void work(){
+		ArrayList<Request> batch = new ArrayList<Request>(maxBatch);
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, maxBatch-1);
+				for (Request r : batch) {
+					try {
+						solver.solve(r.puzzle, r.slot);
+					}
+					catch (Throwable e) {
+						// A StackOverflowError or an OutOfMemoryError too: the worker carries on and the connection answers with the error
+						r.failure = e;
+					}
+					finally {
+						// The connection must not wait forever
+						r.done.release();
+					}
+				}
+				batch.clear();
+			}
+		}
+		catch (InterruptedException e) {
+			// Shutting down
+		}
+	}
+
+	// Print the throughput and latency of every window with traffic
+	private void startReports(){
+		Thread reporter = new Thread(new Runnable() {
+			public void run(){
+				LatencyHistogram total = new LatencyHistogram();
+				try {
+					while (true) {
+						Thread.sleep(reportSeconds*1000L);
+						LatencyHistogram window = latency.drain();
+						long n = window.count();
+						if (n==0) continue;
+						total.add(window);
+						System.err.println("Served " + n + " puzzles in " + reportSeconds + "s (" + n/reportSeconds + " puzzles/sec), "
+							+ window.summary() + ", " + queue.size() + " queued; since start " + total.count() + " puzzles, " + total.summary());
+					}
+				}
+				catch (InterruptedException e) {
+					// Shutting down
+				}
+			}
+		}, "reporter");
+		reporter.setDaemon(true);
+		reporter.start();
+	}
+}
@@ -0,0 +1,196 @@
+/* SolveSession keeps one puzzle open for an interactive front end, which places and
+ * removes digits and asks for hints and checks thousands of times in a game.  The
+ * candidates state (see Candidates) lives as long as the session and only holds the
+ * givens and the digits placed by the player, so:
+ * 1. Placing a digit only updates its peers, and removing one undoes the trail back to
+ *    the placement and places again the digits that came after it
+ * 2. A hint is read off the state: a cell with one candidate left (naked single) or a
+ *    value with one cell left in a row, column or box (hidden single), the categories
+ *    of SmartSolve.  When there is none, the pair and intersection rules of Propagator
+ *    remove candidates first, and are undone once the single is found
+ * 3. Solvability is an MRV search on the same state, undone afterwards, and is kept
+ *    until the grid changes
+ * Nothing is rebuilt between calls, so each one takes microseconds on a 9x9 grid.
+ * Only grids up to 25x25 are supported, the ones the candidates state handles.  A
+ * session is not thread safe, a front end keeps one per game. */
+class SolveSession
+{
+	// Kind of deduction behind a hint, matching the counters of SolverStats
+	enum Rule { NAKED_SINGLE, HIDDEN_SINGLE_ROW, HIDDEN_SINGLE_COLUMN, HIDDEN_SINGLE_BOX }
+
+	// A cell that can be deduced, the value it takes and the rule that forces it
+	static class Hint
+	{
+		final int row, col, value;
+		final Rule rule;
+
+		// Candidates the pair and intersection rules had to remove before the single appeared, 0 if none
+		final int eliminations;
+
+		Hint( int row, int col, int value, Rule rule, int eliminations )
+		{
+			this.row = row;
+			this.col = col;
+			this.value = value;
+			this.rule = rule;
+			this.eliminations = eliminations;
+		}
+
+		public String toString(){
+			return rule + " " + value + " at (" + row + "," + col + ")" + (eliminations>0 ? " after " + eliminations + " eliminations" : "");
+		}
+	}
+
+	final int SIZE, N;
+	private final Candidates c;
+
+	// Removes candidates for the hints without placing anything, and propagates the solvability search
+	private final Propagator eliminations, propagator;
+	private final MrvSearch search;
+
+	// Givens of the puzzle, they can't be removed
+	private final boolean[] given;
+
+	// Digits placed by the player in order, as cell*N+k-1, and the trail mark before each one
+	private int[] moves, marks;
+	private int moveCount;
+
+	// Whether the grid contradicted itself before each move, which undoing to its mark forgets
+	private boolean[] contradictions;
+
+	// Changes to the grid so far, and the change at which solvable was last worked out
+	private long changes, checkedAt = -1;
+	private boolean solvable;
+
+	public SolveSession( int size )
+	{
+		if (size<1 || size>5) throw new IllegalArgumentException("A session handles sizes 1 to 5, got " + size);
+		SIZE = size;
+		N = size*size;
+		c = new Candidates(size);
+		eliminations = new Propagator(c, Propagator.NAKED_PAIRS | Propagator.HIDDEN_PAIRS | Propagator.POINTING_PAIRS | Propagator.BOX_LINE);
+		propagator = new Propagator(c, Propagator.ALL);
+		search = new MrvSearch(c, propagator);
+		given = new boolean[N*N];
+		moves = new int[N*N];
+		marks = new int[N*N];
+		contradictions = new boolean[N*N];
+	}
+
+	// Start a new puzzle, returns false if two givens clash (the second one is left out)
+	public boolean load(int[][] grid){
+		boolean ok = c.load(grid);
+		for (int cell=0; cell<N*N; cell++) given[cell] = c.value[cell]>0;
+		moveCount = 0;
+		changes++;
+		return ok;
+	}
+
+	public int get(int row, int col){
+		return c.value[row*N+col];
+	}
+
+	public boolean isGiven(int row, int col){
+		return given[row*N+col];
+	}
+
+	// Values still possible in an empty cell, bit k-1 set for k, 0 for a filled cell
+	// Only the digits of the grid are taken into account, as a player's pencil marks would be
+	public int candidates(int row, int col){
+		return c.cand[row*N+col];
+	}
+
+	// True if k can go in the cell: the cell is empty and no cell of its row, column or box holds k
+	public boolean canPlace(int row, int col, int k){
+		int cell = row*N+col;
+		return k>=1 && k<=N && c.value[cell]==0 && c.isCandidate(cell, k);
+	}
+
+	// Place a digit, returns false and changes nothing if canPlace doesn't allow it
+	// A digit that leaves another cell without a value is placed, solvable() tells it apart
+	public boolean place(int row, int col, int k){
+		if (!canPlace(row, col, k)) return false;
+		int cell = row*N+col;
+		marks[moveCount] = c.mark();
+		contradictions[moveCount] = c.contradiction;
+		moves[moveCount++] = cell*N + k-1;
+		c.place(cell, k);
+		changes++;
+		return true;
+	}
+
+	// Remove a digit placed by the player, returns false for a given or an empty cell
+	public boolean remove(int row, int col){
+		int cell = row*N+col;
+		if (given[cell] || c.value[cell]==0) return false;
+		int i = moveCount-1;
+		while (moves[i]/N != cell) i--;
+		// Undo back to the placement and replay the digits placed after it, which are all still allowed
+		// The undo clears the contradiction: the one before the placement is put back, and the replay finds the ones after it again
+		c.undo(marks[i]);
+		c.contradiction = contradictions[i];
+		int end = moveCount;
+		moveCount = i;
+		for (int j=i+1; j<end; j++) {
+			int move = moves[j];
+			marks[moveCount] = c.mark();
+			contradictions[moveCount] = c.contradiction;
+			moves[moveCount++] = move;
+			c.place(move/N, move%N+1);
+		}
+		changes++;
+		return true;
+	}
+
+	// True once every cell holds a digit, which the placement checks make a solution
+	public boolean isComplete(){
+		return c.numberCellSolved == N*N;
+	}
+
+	// True if the digits on the grid can still be completed to a solution
+	public boolean solvable(){
+		if (checkedAt != changes) {
+			boolean contradiction = c.contradiction;
+			c.requeue();
+			solvable = !contradiction && search.count(1) > 0;
+			c.contradiction = contradiction;
+			checkedAt = changes;
+		}
+		return solvable;
+	}
+
+	// Next cell that can be deduced from the grid, or null if the grid is complete, contradicts itself
+	// or needs more than the rules of SmartSolve
+	public Hint hint(){
+		if (c.contradiction || isComplete()) return null;
+		Hint hint = findSingle(0);
+		if (hint != null) return hint;
+		// Remove candidates with the other rules, look again, and put the state back as it was
+		int mark = c.mark();
+		int before = eliminations.eliminations;
+		if (eliminations.propagate()) hint = findSingle(eliminations.eliminations - before);
+		c.undo(mark);
+		return hint;
+	}
+
+	// First naked single in cell order, then the first hidden single in the rows, the columns and the boxes
+	private Hint findSingle(int removed){
+		for (int cell=0; cell<N*N; cell++) {
+			int m = c.cand[cell];
+			if (m!=0 && (m & (m-1)) == 0)
+				return new Hint(cell/N, cell%N, Integer.numberOfTrailingZeros(m)+1, Rule.NAKED_SINGLE, removed);
+		}
+		for (int e=0; e<3*N*N; e++) {
+			int u = e/N, bit = 1<<(e%N);
+			if (c.count[e]!=1 || (c.placed[u] & bit) != 0) continue;
+			for (int i=u*N, end=i+N; i<end; i++) {
+				int cell = c.units[i];
+				if ((c.cand[cell] & bit) != 0) {
+					Rule rule = u<N ? Rule.HIDDEN_SINGLE_ROW : u<2*N ? Rule.HIDDEN_SINGLE_COLUMN : Rule.HIDDEN_SINGLE_BOX;
+					return new Hint(cell/N, cell%N, e%N+1, rule, removed);
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,63 @@
+/* SolveSessionTest plays short games on a SolveSession and checks its answers after
+ * every move, to catch a state that drifts from the grid it holds.  It needs no test
+ * framework: it prints OK, or the first check that failed and exits with status 1.
+ * Usage: java SolveSessionTest */
+class SolveSessionTest
+{
+	public static void main(String[] args){
+		contradictionKeptByRemove();
+		contradictionClearedByRemove();
+		clashKeptByRemove();
+		System.out.println("OK");
+	}
+
+	// 4x4 grid with 1 and 2 in the first row and 3 in the middle of the third column
+	static SolveSession session(){
+		int[][] grid = new int[4][4];
+		grid[0][0] = 1;
+		grid[0][1] = 2;
+		grid[2][2] = 3;
+		SolveSession s = new SolveSession(2);
+		check(s.load(grid), "the givens load");
+		return s;
+	}
+
+	// A 4 at (3,2) leaves (0,2) with no value, removing a later digit must not forget it
+	static void contradictionKeptByRemove(){
+		SolveSession s = session();
+		check(s.place(3, 2, 4), "4 goes at (3,2)");
+		check(!s.solvable() && s.hint()==null, "(0,2) has no value left");
+		check(s.place(3, 3, 1), "1 goes at (3,3)");
+		check(s.remove(3, 3), "1 comes off (3,3)");
+		check(!s.solvable(), "still not solvable once (3,3) is removed");
+		check(s.hint()==null, "no hint once (3,3) is removed, got " + s.hint());
+	}
+
+	// Removing the digit that emptied (0,2) makes the grid solvable again
+	static void contradictionClearedByRemove(){
+		SolveSession s = session();
+		check(s.place(3, 2, 4), "4 goes at (3,2)");
+		check(s.place(3, 3, 1), "1 goes at (3,3)");
+		check(s.remove(3, 2), "4 comes off (3,2)");
+		check(s.solvable(), "solvable once (3,2) is removed");
+		check(s.hint()!=null, "a hint once (3,2) is removed");
+	}
+
+	// Two givens in the same row stay a contradiction whatever the player removes
+	static void clashKeptByRemove(){
+		int[][] grid = new int[4][4];
+		grid[0][0] = 1;
+		grid[0][3] = 1;
+		SolveSession s = new SolveSession(2);
+		check(!s.load(grid), "the clash is reported by load");
+		check(s.place(1, 1, 3), "3 goes at (1,1)");
+		check(s.remove(1, 1), "3 comes off (1,1)");
+		check(!s.solvable() && s.hint()==null, "the clash is kept once (1,1) is removed");
+	}
+
+	static void check(boolean ok, String what){
+		if (ok) return;
+		System.out.println("Failed: " + what);
+		System.exit(1);
+	}
+}
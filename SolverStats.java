@@ -0,0 +1,86 @@
+/* SolverStats collects counters and timings of one solve.  The engines only update
+ * it when one is attached (the field is null otherwise), so it costs a null check per
+ * event when switched off.  toJson() gives a single line that can be logged after
+ * every solve and compared between puzzles. */
+class SolverStats
+{
+	// Cells filled by SmartSolve before any search
+	long smartSolveCells;
+
+	// Values placed by each single rule, the hidden singles split by the unit they were found in
+	long nakedSingles, hiddenSinglesRow, hiddenSinglesColumn, hiddenSinglesBox;
+
+	// Candidates removed by each of the stronger rules
+	long nakedPairs, hiddenPairs, pointingPairs, boxLine;
+
+	// Calls to Propagator.propagate
+	long propagations;
+
+	// Search nodes, and the times a search undid a guess
+	long nodes, backtracks;
+
+	// Dead ends hit by randomGuess, and the cells its random unassignment wiped out
+	long deadEnds, randomUnassigned;
+
+	// Restarts of the annealing engine, see AnnealingSolver
+	long restarts;
+
+	// Time spent in SmartSolve, in the search and in the whole solve, in nanoseconds
+	long smartSolveNanos, searchNanos, totalNanos;
+
+	String engine;
+	boolean solved;
+
+	// Answered by the solution cache without a search
+	boolean cacheHit;
+
+	// Stopped by its deadline, its node budget or another strategy before it could finish
+	boolean timedOut;
+
+	void reset(){
+		smartSolveCells = 0;
+		nakedSingles = hiddenSinglesRow = hiddenSinglesColumn = hiddenSinglesBox = 0;
+		nakedPairs = hiddenPairs = pointingPairs = boxLine = 0;
+		propagations = 0;
+		nodes = backtracks = 0;
+		deadEnds = randomUnassigned = 0;
+		restarts = 0;
+		smartSolveNanos = searchNanos = totalNanos = 0;
+		engine = null;
+		solved = false;
+		cacheHit = false;
+		timedOut = false;
+	}
+
+	// Hidden singles of all units
+	long hiddenSingles(){
+		return hiddenSinglesRow + hiddenSinglesColumn + hiddenSinglesBox;
+	}
+
+	public String toJson(){
+		StringBuilder out = new StringBuilder(512);
+		out.append("{\"engine\":\"").append(engine).append('"');
+		out.append(",\"solved\":").append(solved);
+		out.append(",\"cacheHit\":").append(cacheHit);
+		out.append(",\"timedOut\":").append(timedOut);
+		out.append(",\"smartSolveCells\":").append(smartSolveCells);
+		out.append(",\"rules\":{\"nakedSingle\":").append(nakedSingles);
+		out.append(",\"hiddenSingleRow\":").append(hiddenSinglesRow);
+		out.append(",\"hiddenSingleColumn\":").append(hiddenSinglesColumn);
+		out.append(",\"hiddenSingleBox\":").append(hiddenSinglesBox);
+		out.append(",\"nakedPair\":").append(nakedPairs);
+		out.append(",\"hiddenPair\":").append(hiddenPairs);
+		out.append(",\"pointingPair\":").append(pointingPairs);
+		out.append(",\"boxLine\":").append(boxLine).append('}');
+		out.append(",\"propagations\":").append(propagations);
+		out.append(",\"nodes\":").append(nodes);
+		out.append(",\"backtracks\":").append(backtracks);
+		out.append(",\"deadEnds\":").append(deadEnds);
+		out.append(",\"randomUnassigned\":").append(randomUnassigned);
+		out.append(",\"restarts\":").append(restarts);
+		out.append(",\"nanos\":{\"smartSolve\":").append(smartSolveNanos);
+		out.append(",\"search\":").append(searchNanos);
+		out.append(",\"total\":").append(totalNanos).append("}}");
+		return out.toString();
+	}
+}
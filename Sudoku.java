@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.io.*;
 
 
@@ -6,7 +7,11 @@ class Sudoku
 {
     /* SIZE is the size parameter of the Sudoku puzzle, and N is the square of the size.  For 
      * a standard Sudoku puzzle, SIZE is 3 and N is 9. */
-    static int SIZE, N; // Making these variables static gives runs about 3ms faster in veryHard5x5.txt
+    // They belong to the instance, so puzzles of different sizes can be solved at the same time on different threads
+    final int SIZE, N;
+
+    // Unit and peer tables of this size, shared with every other solver of the same size (see Geometry)
+    final Geometry geometry;
 
     /* The grid contains all the numbers in the Sudoku puzzle.  Numbers which have
      * not yet been revealed are stored as 0. */
@@ -18,181 +23,278 @@ class Sudoku
 	// Track the number of cells solved
 	int numberCellSolved = 0;
 
-	// Used for Random Guess algorithm
+	// Used for Random Guess algorithm, a fresh unseeded generator is created by solveSudoku unless one is set before
 	Random generator;
 
-	// Grid of the same size as Grid, constains domains of all the possible valid numbers for each cell
-	Domain[][] domains;
+	// Raised from another thread to stop backtrack, randomGuess and the searches, see PortfolioSolver
+	AtomicBoolean cancelled = new AtomicBoolean();
+
+	// Persistent domains of all the possible valid numbers for each cell, updated as values are placed
+	Candidates candidates;
+
+	// Engine used by solve(): "smart" for SmartSolve followed by the best search for the size of the grid,
+	// "backtrack", "mrv", "random", "parallel" (ParallelSolver) or "anneal" (AnnealingSolver) for SmartSolve
+	// followed by that search, "dlx" for DancingLinks and "portfolio" to race several of them (PortfolioSolver)
+	String engine = "smart";
+
+	// Cooling factor of every level, levels without progress before a restart and draws for a conflicting cell of the anneal engine
+	double cooling = 0.99;
+	int reheat = 50;
+	int focus = 16;
+
+	// Number of seeded randomGuess runs raced by the portfolio engine, and the strategy that won the last race
+	int seeds = 4;
+	String winner;
+
+	// Worker threads of the parallel engine, and number of branch points split into separate tasks
+	int threads = Runtime.getRuntime().availableProcessors();
+	int splitDepth = 2;
+
+	// Time and search nodes allowed to every solve, 0 for no limit, and the budget of the current solve (see Budget)
+	long timeoutMillis, maxNodes;
+	Budget budget;
+	private int ticks;
+
+	// Counters and timings of the last solve, null unless instrumentation is switched on (see SolverStats)
+	SolverStats stats;
+
+	// Solutions of the puzzles already solved, checked before any engine runs, null if not used
+	SolutionCache cache;
+
+	// Deduction rules applied by SmartSolve, the propagator running them and the search used on large grids
+	int rules = Propagator.ALL;
+	Propagator propagator;
+	MrvSearch mrv;
+
+	// Candidates state, singles propagation and search of the grids with N>32, used instead of the three above
+	WideCandidates wide;
+	WideSearch wideSearch;
+
+	// Bitsets of the digits already used in every row, column and box, bit k-1 is set if k is used
+	// Grids with N<=32 keep one int per unit, bigger grids keep W long words per unit
+	int[] rowUsed, colUsed, boxUsed;
+	long[] rowUsedWide, colUsedWide, boxUsedWide;
+	int W;
+
+	// Index of the box containing the cell (row, col), read from the tables instead of dividing by SIZE
+	int boxOf(int row, int col){
+		return geometry.unitsOf[(row*N+col)*3+2] - 2*N;
+	}
+
+	// Build the row, column and box bitsets from the current Grid
+	// The bitsets are only allocated on the first call, later puzzles reuse them
+	void initMasks(){
+		geometry.checkValues(Grid);
+		if (N<=32) {
+			if (rowUsed==null) {
+				rowUsed = new int[N];
+				colUsed = new int[N];
+				boxUsed = new int[N];
+			}
+			Arrays.fill(rowUsed, 0);
+			Arrays.fill(colUsed, 0);
+			Arrays.fill(boxUsed, 0);
+		}
+		else {
+			if (rowUsedWide==null) {
+				W = (N+63)>>>6;
+				rowUsedWide = new long[N*W];
+				colUsedWide = new long[N*W];
+				boxUsedWide = new long[N*W];
+			}
+			Arrays.fill(rowUsedWide, 0);
+			Arrays.fill(colUsedWide, 0);
+			Arrays.fill(boxUsedWide, 0);
+		}
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				if (Grid[r][c]>0) markUsed(r, c, Grid[r][c]);
+	}
+
+	// Flag k as used in the row, column and box of the cell (row, col)
+	private void markUsed(int row, int col, int k){
+		assert k>=1 && k<=N : k;
+		int b = boxOf(row,col);
+		if (N<=32) {
+			int bit = 1<<(k-1);
+			rowUsed[row] |= bit;
+			colUsed[col] |= bit;
+			boxUsed[b] |= bit;
+		}
+		else {
+			int w = (k-1)>>>6;
+			long bit = 1L<<(k-1);
+			rowUsedWide[row*W+w] |= bit;
+			colUsedWide[col*W+w] |= bit;
+			boxUsedWide[b*W+w] |= bit;
+		}
+	}
+
+	// Flag k as free again in the row, column and box of the cell (row, col)
+	private void markFree(int row, int col, int k){
+		assert k>=1 && k<=N : k;
+		int b = boxOf(row,col);
+		if (N<=32) {
+			int bit = ~(1<<(k-1));
+			rowUsed[row] &= bit;
+			colUsed[col] &= bit;
+			boxUsed[b] &= bit;
+		}
+		else {
+			int w = (k-1)>>>6;
+			long bit = ~(1L<<(k-1));
+			rowUsedWide[row*W+w] &= bit;
+			colUsedWide[col*W+w] &= bit;
+			boxUsedWide[b*W+w] &= bit;
+		}
+	}
+
+	// Insert k in the cell (row, col) and update the bitsets
+	void setCell(int row, int col, int k){
+		Grid[row][col] = k;
+		markUsed(row, col, k);
+	}
+
+	// Empty the cell (row, col) and update the bitsets
+	void clearCell(int row, int col){
+		if (Grid[row][col]>0) markFree(row, col, Grid[row][col]);
+		Grid[row][col] = 0;
+	}
+
+	// Bitset of the values still valid in the cell (row, col), only for grids with N<=32
+	int freeMask(int row, int col){
+		int full = N==32 ? -1 : (1<<N)-1;
+		return ~(rowUsed[row] | colUsed[col] | boxUsed[boxOf(row,col)]) & full;
+	}
 
 	// Check if a value k is valid in the cell (row, col) returns true if valid
 	boolean checkValid(int row, int col, int k){
-		// Check if k is present in the column
-		for (int c=0; c<N; c++)
-			if (Grid[row][c] == k) return false;
-		// Check if k is present in the row
-		for (int r=0; r<N; r++)
-			if (Grid[r][col] == k) return false;
-		// Check if k is present in the box
-		int rBox = row/SIZE;
-		int cBox = col/SIZE;
-		for (int r=SIZE*rBox; r < SIZE*rBox+SIZE; r++)
-		for (int c=SIZE*cBox; c < SIZE*cBox+SIZE; c++)
-		if (Grid[r][c] == k) return false;
-		return true;
+		assert k>=1 && k<=N : k;
+		int b = boxOf(row,col);
+		if (N<=32) {
+			int bit = 1<<(k-1);
+			return ((rowUsed[row] | colUsed[col] | boxUsed[b]) & bit) == 0;
+		}
+		int w = (k-1)>>>6;
+		long bit = 1L<<(k-1);
+		return ((rowUsedWide[row*W+w] | colUsedWide[col*W+w] | boxUsedWide[b*W+w]) & bit) == 0;
 	}
 
-	// A domain object contains all the possible valid values for a cell
-	private class Domain {
-		public int[] ass = new int[N];
-		public int numberAss = 0;
+	// Number of valid values in the cell (row, col)
+	int domainSize(int row, int col){
+		if (N<=32) return Integer.bitCount(freeMask(row,col));
+		int b = boxOf(row,col);
+		int size = N;
+		for (int w=0; w<W; w++)
+			size -= Long.bitCount(rowUsedWide[row*W+w] | colUsedWide[col*W+w] | boxUsedWide[b*W+w]);
+		return size;
 	}
 
-	// Get all the possible values for a cell and insert in domain
-	private Domain getDomain(int r, int c) {
-		Domain d = new Domain();
+	// The i-th valid value of the cell (row, col) in increasing order, counting from 0
+	int nthValue(int row, int col, int i){
+		if (N<=32) {
+			// Drop the i lowest set bits to reach the value
+			int m = freeMask(row,col);
+			for (; i>0; i--) m &= m-1;
+			return Integer.numberOfTrailingZeros(m)+1;
+		}
 		for (int k=1; k<=N; k++)
-			if (checkValid(r,c,k)) {
-				d.ass[d.numberAss] = k;
-				d.numberAss++;
-			}
-		return d;
-  	}
+			if (checkValid(row,col,k) && i-- == 0) return k;
+		return 0;
+	}
 
   	// Smart algorithm to systematically solve the grid according to domain availability and unique possibility
-  	// It uses a set of rules in order
-  	// 1. Find the domain of each cell
-  	// 2. Find all domains with a single value and insert in grid
-  	// 3. Scan domains of each row and find unique valid numbers for each row and insert in grid
-  	// 4. Scan domains of each column and find unique valid numbers for reach column and insert in grid
-  	// 5. Scan domains of each box and find unique valid numbers for each box and insert in grid
+  	// It uses a set of rules, switched on and off with the rules bitset (see Propagator)
+  	// 1. The domain of each cell is kept up to date by candidates, placing a value only updates its row, column and box
+  	// 2. Insert the value of every cell whose domain has a single value
+  	// 3. Insert every value that has a single possible cell left in a row, column or box
+  	// 4. Remove candidates with naked pairs, hidden pairs, pointing pairs and box-line reduction
+  	// 5. Repeat until no rule changes the grid anymore
+  	// Grids with N>32 only apply the singles, through the wide candidates state (see WideSearch)
+  	// Returns true if cells were filled
 	private boolean SmartSolve(){
+		int[] value;
+		if (N>32) {
+			int before = wideSearch.placements;
+			wideSearch.propagate();
+			if (wideSearch.placements==before) return false;
+			value = wide.value;
+		}
+		else {
+			int before = propagator.placements;
+			propagator.propagate();
+			if (propagator.placements==before) return false;
+			value = candidates.value;
+		}
 
-		// A grid containing the domains of every cell
-		domains = new Domain[N][N];
-
-		// Find the domain of each cell and insert into domains grid
-		for (int r=0; r<N; r++)
-			for (int c=0; c<N; c++) { 
-				domains[r][c] = new Domain();
-				// Fill domain with the only possible value if cell initially solved
-				if (Grid[r][c]>0) {
-					domains[r][c].numberAss = 1;
-					domains[r][c].ass[0]=Grid[r][c];
-				}
-				// Get domain if cell empty
-				else {
-					domains[r][c] = getDomain(r,c);
-				}
-			}
-
-		// For all domains with a single possible value, fill the Grid with the value and assign true in gridCellSolved
+		// Copy the cells filled by the propagation into the grid
 		for (int r=0; r<N; r++)
 			for (int c=0; c<N; c++)
-				if (Grid[r][c]==0 && domains[r][c].numberAss==1) {
-					Grid[r][c]=domains[r][c].ass[0];
+				if (Grid[r][c]==0 && value[r*N+c]>0) {
+					setCell(r, c, value[r*N+c]);
 					gridCellSolved[r][c]=true;
-					return true;
-				}         
-
-		int count;
-
-		// Scan the domains of every cell in row and find a unique valid number for the same row
-		for (int k=1; k<=N; k++)
-			for (int r=0; r<N; r++) {
-				count=0;
-				int col=0;
-				for (int c=0; c<N; c++)
-					// Scan through every possible number in the domain
-					for (int i=0; i<domains[r][c].numberAss; i++)
-						if (domains[r][c].ass[i]==k) {
-							col=c; 
-							count++;
-						}
-				// If valid number is unique in the column and grid is empty at this cell
-				if (count==1 && Grid[r][col]==0) {
-					Grid[r][col]=k;
-					gridCellSolved[r][col]=true;
-					return true;
-				}
-	  		}
-
-		// Scan the domains of every cell in column and find a unique valid number for the same column
-		for (int k=1; k<=N; k++)
-			for (int c=0; c<N; c++) {
-				int row=0;
-				count=0;
-				for (int r=0; r<N; r++)
-					// Scan through every possible number in the domain
-					for (int i=0; i<domains[r][c].numberAss; i++)
-						if (domains[r][c].ass[i]==k) {
-							row=r; 
-							count++;
-						}
-				// If valid number is unique in the row and grid is empty at this cell
-				if (count==1 && Grid[row][c]==0) {
-					Grid[row][c]=k;
-					gridCellSolved[row][c]=true;
-					return true;
+					numberCellSolved++;
 				}
-			}
+		return true;
+	}
 
-		// Scan the domains of every cell in a box and find a unique valid number for the same box
-		for (int k=1; k<=N; k++)
-			for (int b1=0; b1<SIZE; b1++)
-  				for (int b2=0; b2<SIZE; b2++) {
-					int col=0;
-					int row=0;
-					count=0;
-					for (int r=b1*SIZE; r<b1*SIZE+SIZE; r++)
-						for (int c=b2*SIZE; c<b2*SIZE+SIZE; c++) 
-							for (int i=0; i<domains[r][c].numberAss; i++)
-								if (domains[r][c].ass[i]==k) {
-									col=c; 
-									row=r; 
-									count++;
-								}
-		  			if (count==1 && Grid[row][col]==0) {
-						Grid[row][col]=k;
-						gridCellSolved[row][col]=true;
-						return true;
-		  			}
-	      		}
-		return false;
+	// True if another strategy finished or the budget ran out, the budget is only charged every interval nodes
+	private boolean stopped(){
+		if (cancelled.get()) return true;
+		if (budget==null) return false;
+		if ((++ticks & budget.mask) == 0) return budget.spend();
+		return budget.exhausted;
 	}
 
-	// Simple backtrack algorithm to systematically solve the grid row by row with recursion
+	// Empty cells left to the backtrack in row by row order, and the depth reached in that list
+	private int[] open;
+	private int openCount;
+
+	// Simple backtrack algorithm to systematically solve the grid row by row
 	// 1. Find a valid number for a cell and insert it
 	// 2. Find a valid number for next cell, if non-existent, backtrack and try another valid number for previous cell
-	// 3. Do steps 1 and 2 recursively until entire grid is solved
-	public void backtrack(int row, int col)throws Exception{
-
-		// If row number exceeds the max row, the grid is solved
-        if (row > N-1)throw new Exception( "Success!" ) ;
-
-	    // If cell is not 0 (or x), continue with the next cell
-	    if (Grid[row][col]!=0)backtrackNext(row, col);
-	    else {
-	        // Guess a valid number for current cell
-	        for ( int number = 1; number <= N; number++){
-	            if (checkValid(row,col,number)){
-	                Grid[row][col] = number;
-	                numberCellSolved++;
-	                // Continue with next cell
-	                backtrackNext(row, col);
-	            }
-	        }
-	        Grid[row][col]=0;
-	    }
-	}
+	// 3. Do steps 1 and 2 until entire grid is solved
+	// The empty cells are kept on an explicit stack and the number in a cell tells which one to try next,
+	// so the depth of the search never reaches the thread stack, whatever the size of the grid
+	// Returns true once the grid is solved, false if no number works, the search was cancelled or the budget ran out
+	public boolean backtrack(){
+		if (open==null) open = new int[N*N];
+		openCount = 0;
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				if (Grid[r][c]==0) open[openCount++] = r*N+c;
+
+		int depth = 0;
+		while (depth < openCount) {
+			// Give up if another strategy already finished or the budget ran out
+			if (stopped()) return false;
 
-	// Calls backtrack for the next cell
-	public void backtrackNext(int row, int col)throws Exception{
-		if(numberCellSolved==N*N) return;
-	    if (col < (N-1)){
-	        backtrack(row, col+1);
-	    } else {
-	        backtrack(row+1, 0);
-	    }
+			int row = open[depth]/N, col = open[depth]%N;
+			int number = Grid[row][col];
+			if (number==0) {
+				if (stats!=null) stats.nodes++;
+			}
+			else {
+				// Undo the guess before trying the next number
+				clearCell(row,col);
+				numberCellSolved--;
+				if (stats!=null) stats.backtracks++;
+			}
+
+			// Guess the next valid number for current cell
+			do number++;
+			while (number<=N && !checkValid(row,col,number));
+
+			if (number<=N) {
+				setCell(row,col,number);
+				numberCellSolved++;
+				// Continue with next cell
+				depth++;
+			}
+			// No number left, go back to the previous cell, or stop if there is none
+			else if (--depth < 0) return false;
+		}
+		return true;
 	}
 
 	// Random guess algorithm for large grids
@@ -203,27 +305,24 @@ class Sudoku
 	public void randomGuess(){
 		int row=0, col=0;
 		// Solve the rest of the grid with random guess and backtrack if wrong
-		while (numberCellSolved < N*N) {	    
-			Domain current = null;
-			Domain best = new Domain();
-			best.numberAss = N+1;
-		  
-			// Find the cell with the smallest domain size 
+		// It has no end on a grid without solution, only cancelled or the budget stop it then
+		while (numberCellSolved < N*N && !stopped()) {	    
+			int bestSize = N+1;
+
+			// Find the cell with the smallest domain size, the size is a popcount of the free bitset
 			for (int r=0; r<N; r++)
 				for (int c=0; c<N; c++)
 					if (Grid[r][c]==0) {
-					    current = getDomain(r,c);
-					    // Check if current domain is smallest, copy it to the best domain variable
-					    if (current.numberAss < best.numberAss) {
-							best.numberAss = current.numberAss;
-							for (int i=0; i<best.numberAss; i++)
-							    best.ass[i] = current.ass[i];
+					    int size = domainSize(r,c);
+					    if (size < bestSize) {
+							bestSize = size;
 							row = r; col = c;
 					    }
 					}
 
 			// Random backtrack if smallest domain is zero, thus a wrong value has been previously assigned, unassign a random value and backtrack
-			if (best.numberAss==0) {
+			if (bestSize==0) {
+				if (stats!=null) stats.deadEnds++;
 			    for (int r=0; r<N; r++)
 					for (int c=0; c<N; c++)
 					    if (!gridCellSolved[r][c] && Grid[r][c]>0) {
@@ -231,24 +330,119 @@ class Sudoku
 							double probability = 0.1;
 							if (generator.nextFloat() < probability) {
 							    numberCellSolved--;
-							    Grid[r][c] = 0;
+							    clearCell(r,c);
+							    if (stats!=null) stats.randomUnassigned++;
 							}
 					    }
 			}
 			// Assign random value from domain
 			// Again random assignment from the domain feels faster that systematical assignment (deduction from testing)
 			else {
-				int i = generator.nextInt(best.numberAss);
-			    Grid[row][col] = best.ass[i];
+				if (stats!=null) stats.nodes++;
+				setCell(row, col, nthValue(row, col, generator.nextInt(bestSize)));
 			    numberCellSolved++;
 			}
 		}
 	}
     
+	// Local search over the cells SmartSolve left empty, restricted to their candidates (see AnnealingSolver)
+	// Returns true once the grid is solved, false if a box can't take its missing values or the search was stopped
+	private boolean anneal(){
+		boolean[] allowed = new boolean[N*N*N];
+		for (int cell=0; cell<N*N; cell++)
+			if (Grid[cell/N][cell%N]==0)
+				for (int k=1; k<=N; k++)
+					allowed[cell*N+k-1] = N>32 ? wide.isCandidate(cell, k) : candidates.isCandidate(cell, k);
+		AnnealingSolver annealer = new AnnealingSolver(SIZE, Grid, allowed, generator);
+		annealer.cooling = cooling;
+		annealer.reheat = reheat;
+		annealer.focus = focus;
+		annealer.cancelled = cancelled;
+		annealer.budget = budget;
+		boolean solved = annealer.solve(Grid);
+		if (stats!=null) {
+			stats.nodes = annealer.moves;
+			stats.restarts = annealer.restarts;
+		}
+		if (solved) numberCellSolved = N*N;
+		return solved;
+	}
+
+	// Copy the cells filled by a search on a candidates state into the grid
+	private void copySolved(int[] value){
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				if (Grid[r][c]==0) {
+					setCell(r, c, value[r*N+c]);
+					numberCellSolved++;
+				}
+	}
+
+	// Load the grid into the candidates state, returns false if two givens clash
+	// The candidates state and the search are kept from one puzzle to the next
+	private boolean loadCandidates(){
+		if (N>32) {
+			if (wide==null) {
+				wide = new WideCandidates(SIZE);
+				wideSearch = new WideSearch(wide);
+			}
+			wideSearch.rules = rules;
+			wideSearch.stats = stats;
+			wideSearch.cancelled = cancelled;
+			wideSearch.budget = budget;
+			return wide.load(Grid);
+		}
+		if (candidates==null) {
+			candidates = new Candidates(SIZE);
+			propagator = new Propagator(candidates, rules);
+			mrv = new MrvSearch(candidates, propagator);
+		}
+		propagator.rules = rules;
+		propagator.stats = stats;
+		mrv.stats = stats;
+		mrv.cancelled = cancelled;
+		mrv.budget = budget;
+		return candidates.load(Grid);
+	}
+
+	// Count the solutions of the grid, stopping at limit: a limit of 2 is enough to tell a
+	// unique solution from several.  The first solution found is written to the grid
+	// Grids up to 32x32 use the propagated candidates search, bigger ones the wide one
+	public int countSolutions(int limit){
+		budget = timeoutMillis>0 || maxNodes>0 ? new Budget(timeoutMillis, maxNodes) : null;
+		if (stats==null) return count(limit);
+		stats.reset();
+		long startTime = System.nanoTime();
+		int count = count(limit);
+		stats.totalNanos = stats.searchNanos = System.nanoTime() - startTime;
+		stats.engine = "count";
+		stats.solved = count>0;
+		return count;
+	}
+
+	private int count(int limit){
+		if (!loadCandidates()) return 0;
+		int count = N>32 ? wideSearch.count(limit) : mrv.count(limit);
+		int[] first = N>32 ? wideSearch.firstSolution : mrv.firstSolution;
+		if (count>0)
+			for (int r=0; r<N; r++)
+				for (int c=0; c<N; c++) Grid[r][c] = first[r*N+c];
+		return count;
+	}
+
+	// Describe the result of countSolutions for the given limit
+	static String describeCount(int count, int limit){
+		if (count==0) return "Solutions: 0 (none)";
+		if (count==1) return "Solutions: 1 (unique)";
+		return "Solutions: " + count + (count>=limit ? " or more" : "") + " (multiple)";
+	}
+
     // Apply the 3 algorithms above to solve the grid
+    // Returns false if the grid has no solution
 	public boolean solveSudoku() {
-		generator = new Random();
-		gridCellSolved = new boolean[N][N];
+		if (generator==null) generator = new Random();
+		if (gridCellSolved==null) gridCellSolved = new boolean[N][N];
+		numberCellSolved = 0;
 
 		// Fill up the gridCellSolved matrix
 		for (int r=0; r<N; r++)
@@ -260,30 +454,170 @@ class Sudoku
 				else gridCellSolved[r][c] = false;
       		}
 		
-		// 1. Fill the grid intuitively using smart solve algorithm
-		while (SmartSolve()) {
-			numberCellSolved++;
-		};
+		// Build the used digit bitsets of every row, column and box
+		initMasks();
+
+		if (!loadCandidates()) return false;
 
+		// 1. Fill the grid intuitively using smart solve algorithm
+		long phaseStart = stats!=null ? System.nanoTime() : 0;
+		int givens = numberCellSolved;
+		while (SmartSolve());
+		if (stats!=null) {
+			stats.smartSolveCells = numberCellSolved - givens;
+			stats.smartSolveNanos = System.nanoTime() - phaseStart;
+			phaseStart = System.nanoTime();
+		}
+		if (N>32 ? wide.contradiction : candidates.contradiction) return false;
+
+		// The smart engine picks the search that works best for the size of the grid
+		String search = engine;
+		if (search.equals("smart")) search = SIZE==3 ? "backtrack" : "mrv";
+		// The wide state has no parallel search, grids with N>32 are searched on one thread
+		if (N>32 && search.equals("parallel")) search = "mrv";
+
+		// 2. Split the search over several threads if the parallel engine was picked
+		if (search.equals("parallel")){
+			ParallelSolver parallel = new ParallelSolver(threads, splitDepth, rules);
+			parallel.budget = budget;
+			Candidates solved = parallel.solve(candidates);
+			if (solved==null) return false;
+			copySolved(solved.value);
+		}
 		// 2. Use simple backtrack algorithm to solve 3x3 bigger as it seems to be faster than random guesses
-		if (SIZE==3){
-			try {backtrack(0,0);}catch(Exception e){}
+		else if (search.equals("backtrack")){
+			if (!backtrack()) return false;
+		}
+		// 2. Or use the deterministic minimum remaining values search on bigger grids
+		else if (search.equals("mrv")){
+			if (N>32) {
+				if (!wideSearch.search()) return false;
+				copySolved(wide.value);
+			}
+			else {
+				if (!mrv.search()) return false;
+				copySolved(candidates.value);
+			}
+		}
+		// 2. Or anneal complete boxes until no row or column repeats a value
+		else if (search.equals("anneal")){
+			if (!anneal()) return false;
 		}
-		// 2. Or use random guesses to solve bigger grids
+		// 2. Or use random guesses
 		else{
 			randomGuess();
 		}
-    	return true;
+		if (stats!=null) stats.searchNanos = System.nanoTime() - phaseStart;
+    	return numberCellSolved==N*N;
 	}
 
+    // Run the selected engine on the grid without printing anything, returns false if no solution was found
+    public boolean solveWithEngine(){
+        budget = timeoutMillis > 0 || maxNodes > 0 ? new Budget( timeoutMillis, maxNodes ) : null;
+        if( stats == null )
+            return runEngine();
+        stats.reset();
+        long startTime = System.nanoTime();
+        boolean solved = runEngine();
+        stats.totalNanos = System.nanoTime() - startTime;
+        stats.engine = winner != null ? engine + ":" + winner : engine;
+        stats.solved = solved;
+        stats.timedOut = !solved && timedOut();
+        return solved;
+    }
+
+    // Answer from the cache if the puzzle, or a symmetric one, was solved before
+    private boolean runEngine(){
+        if( cache == null )
+            return runSearch();
+        CanonicalForm form = new CanonicalForm( SIZE, Grid );
+        if( cache.lookup( form, Grid ) ) {
+            numberCellSolved = N*N;
+            if( stats != null )
+                stats.cacheHit = true;
+            return true;
+        }
+        boolean solved = runSearch();
+        if( solved )
+            cache.put( form, Grid );
+        return solved;
+    }
+
+    private boolean runSearch(){
+        if( engine.equals("dlx") ) {
+            long startTime = System.nanoTime();
+            DancingLinks dlx = new DancingLinks( SIZE, Grid );
+            dlx.cancelled = cancelled;
+            dlx.budget = budget;
+            boolean solved = dlx.solve();
+            if( stats != null ) {
+                stats.nodes = dlx.searchNodes;
+                stats.backtracks = dlx.backtracks;
+                stats.searchNanos = System.nanoTime() - startTime;
+            }
+            return solved;
+        }
+        if( engine.equals("portfolio") ) {
+            PortfolioSolver portfolio = new PortfolioSolver( seeds, rules );
+            portfolio.budget = budget;
+            boolean solved = portfolio.solve( this );
+            winner = portfolio.winner;
+            return solved;
+        }
+        return solveSudoku();
+    }
+
+    // Run the selected engine and report how it ended, with a copy of the grid if it was solved
+    public SolveResult solveResult(){
+        long startTime = System.nanoTime();
+        boolean solved = solveWithEngine();
+        long nanos = System.nanoTime() - startTime;
+        String name = winner != null ? engine + ":" + winner : engine;
+        if( solved ) {
+            int[][] grid = new int[N][];
+            for( int i = 0; i < N; i++ )
+                grid[i] = Grid[i].clone();
+            return new SolveResult( SolveResult.Status.SOLVED, grid, name, nanos );
+        }
+        // A search stopped from outside or out of budget proves nothing, and randomGuess only gives up when stopped
+        SolveResult.Status status = timedOut() ? SolveResult.Status.TIMEOUT : SolveResult.Status.UNSAT;
+        SolveResult result = new SolveResult( status, null, name, nanos );
+        // Progress made before the engine stopped
+        result.filled = filledCells();
+        if( budget != null )
+            result.nodes = budget.spent();
+        return result;
+    }
+
+    // Number of cells of the grid holding a value, the givens included
+    int filledCells(){
+        int filled = 0;
+        for( int i = 0; i < N; i++ )
+            for( int j = 0; j < N; j++ )
+                if( Grid[i][j] != 0 )
+                    filled++;
+        return filled;
+    }
+
+    // True if the last solve was stopped before it could finish
+    boolean timedOut(){
+        return cancelled.get() || ( budget != null && budget.exhausted );
+    }
+
     /* The solve() method should remove all the unknown characters ('x') in the Grid
      * and replace them with the numbers from 1-9 that satisfy the Sudoku puzzle. */
     public void solve(){
-        // Save the time in order to calculate runtime
-        long startTime = System.nanoTime();
-        solveSudoku();
+        SolveResult result = solveResult();
         // Print out the running time in MILLISECONDS of this solve() method
-        System.out.println("Runtime: " + (System.nanoTime() - startTime)/1e6);
+        System.out.println("Runtime: " + result.nanos/1e6);
+        if( winner != null )
+            System.out.println("Winner: " + winner);
+        if( result.status == SolveResult.Status.UNSAT )
+            System.out.println("No solution found");
+        else if( result.status == SolveResult.Status.TIMEOUT )
+            System.out.println("Stopped before a solution was found (" + result.filled + " cells filled, " + result.nodes + " nodes)");
+        if( stats != null )
+            System.out.println( stats.toJson() );
     }
 
 
@@ -292,12 +626,13 @@ class Sudoku
     /*****************************************************************************/
  
     /* Default constructor.  This will initialize all positions to the default 0
-     * value.  Use the read() function to load the Sudoku puzzle from a file or
-     * the standard input. */
+     * value.  Use reset() to load a puzzle read from a file or the standard input
+     * by PuzzleReader. */
     public Sudoku( int size )
     {
         SIZE = size;
         N = size*size;
+        geometry = Geometry.of( size );
 
         Grid = new int[N][N];
         for( int i = 0; i < N; i++ ) 
@@ -306,143 +641,256 @@ class Sudoku
     }
 
 
-    /* readInteger is a helper function for the reading of the input file.  It reads
-     * words until it finds one that represents an integer. For convenience, it will also
-     * recognize the string "x" as equivalent to "0". */
-    static int readInteger( InputStream in ) throws Exception
+    /* Load a new puzzle of the same size into this instance, so that one Sudoku can solve
+     * many puzzles: the grid, bitsets and candidates state are reused, not reallocated. */
+    public void reset( int[][] grid )
     {
-        int result = 0;
-        boolean success = false;
-
-        while( !success ) {
-            String word = readWord( in );
-
-            try {
-                result = Integer.parseInt( word );
-                success = true;
-            } catch( Exception e ) {
-                // Convert 'x' words into 0's
-                if( word.compareTo("x") == 0 ) {
-                    result = 0;
-                    success = true;
-                }
-                // Ignore all other words that are not integers
-            }
-        }
-
-        return result;
+        for( int i = 0; i < N; i++ )
+            System.arraycopy( grid[i], 0, Grid[i], 0, N );
+        numberCellSolved = 0;
+        winner = null;
     }
 
 
-    /* readWord is a helper function that reads a word separated by white space. */
-    static String readWord( InputStream in ) throws Exception
+    /* The print() function outputs the Sudoku grid to the standard output in the
+     * usual format.  The grid is written into the buffer of a PuzzleWriter and goes
+     * out in one write, instead of one print per cell. */
+    public void print() throws IOException
     {
-        StringBuffer result = new StringBuffer();
-        int currentChar = in.read();
-    String whiteSpace = " \t\r\n";
-        // Ignore any leading white space
-        while( whiteSpace.indexOf(currentChar) > -1 ) {
-            currentChar = in.read();
-        }
-
-        // Read all characters until you reach white space
-        while( whiteSpace.indexOf(currentChar) == -1 ) {
-            result.append( (char) currentChar );
-            currentChar = in.read();
-        }
-        return result.toString();
+        PuzzleWriter out = new PuzzleWriter( System.out );
+        out.writeGrid( SIZE, Grid );
+        out.flush();
     }
 
 
-    /* This function reads a Sudoku puzzle from the input stream in.  The Sudoku
-     * grid is filled in one row at at time, from left to right.  All non-valid
-     * characters are ignored by this function and may be used in the Sudoku file
-     * to increase its legibility. */
-    public void read( InputStream in ) throws Exception
+    /* The main function reads in a Sudoku puzzle from the standard input, 
+     * unless a file name is provided as a run-time argument, in which case the
+     * Sudoku puzzle is loaded from that file.  It then solves the puzzle, and
+     * outputs the completed puzzle to the standard output. */
+    public static void main( String args[] ) throws Exception
     {
-        for( int i = 0; i < N; i++ ) {
-            for( int j = 0; j < N; j++ ) {
-                Grid[i][j] = readInteger( in );
+        // Options come before the file name: -rules <list> picks the SmartSolve rules (see Propagator.parseRules)
+        // -engine <name> picks the solver, -threads <n> sets the threads of the parallel engine
+        // and -seeds <n> the number of randomGuess runs of the portfolio engine
+        // -batch solves every puzzle of the input on -threads workers (see BatchSolver)
+        // -stats prints the counters and timings of every solve as JSON (see SolverStats)
+        // -timeout <ms> and -nodes <n> bound every solve, which then stops and reports that it timed out (see Budget)
+        // -count <n> counts the solutions up to n instead of solving, -unique is -count 2
+        // -generate <n> writes n new graded puzzles of -size <n> from -seed <n> instead of solving (see PuzzleGenerator)
+        // and -holes <fraction> sets the cells emptied in the puzzles of sizes 6 to 10
+        // -cache <MB> keeps the solutions in memory and -cache-file <file> also on disk (see SolutionCache)
+        // -serve <port> answers the puzzles sent to a local TCP port on -threads workers until killed (see SolveServer)
+        // -cooling <factor>, -reheat <levels> and -focus <draws> tune the anneal engine, and -seed <n> repeats its run
+        // -pack <corpus> converts the input to a binary corpus and -unpack writes a corpus back as text (see PuzzleCorpus)
+        // -puzzle <i> solves the i-th puzzle of the input, counted from 0, instead of the first
+        String fileName = null;
+        int rules = Propagator.ALL;
+        String engine = "smart";
+        int threads = 0;
+        int seeds = 4;
+        boolean batch = false;
+        boolean stats = false;
+        long timeoutMillis = 0;
+        long maxNodes = 0;
+        int countLimit = 0;
+        int generate = 0;
+        int generateSize = 3;
+        long seed = System.nanoTime();
+        double holes = 0.3;
+        long cacheMB = 0;
+        String cacheFile = null;
+        int port = 0;
+        double cooling = 0.99;
+        int reheat = 50;
+        int focus = 16;
+        boolean seeded = false;
+        String packFile = null;
+        boolean unpack = false;
+        long puzzleIndex = 0;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals("-rules") && i+1 < args.length )
+                rules = Propagator.parseRules( args[++i] );
+            else if( args[i].equals("-engine") && i+1 < args.length )
+                engine = args[++i];
+            else if( args[i].equals("-threads") && i+1 < args.length )
+                threads = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-seeds") && i+1 < args.length )
+                seeds = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-batch") )
+                batch = true;
+            else if( args[i].equals("-stats") )
+                stats = true;
+            else if( args[i].equals("-timeout") && i+1 < args.length )
+                timeoutMillis = Long.parseLong( args[++i] );
+            else if( args[i].equals("-nodes") && i+1 < args.length )
+                maxNodes = Long.parseLong( args[++i] );
+            else if( args[i].equals("-count") && i+1 < args.length )
+                countLimit = Math.max( 1, Integer.parseInt( args[++i] ) );
+            else if( args[i].equals("-unique") )
+                countLimit = 2;
+            else if( args[i].equals("-generate") && i+1 < args.length )
+                generate = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-size") && i+1 < args.length )
+                generateSize = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-holes") && i+1 < args.length )
+                holes = Double.parseDouble( args[++i] );
+            else if( args[i].equals("-seed") && i+1 < args.length ) {
+                seed = Long.parseLong( args[++i] );
+                seeded = true;
             }
+            else if( args[i].equals("-cooling") && i+1 < args.length )
+                cooling = Double.parseDouble( args[++i] );
+            else if( args[i].equals("-reheat") && i+1 < args.length )
+                reheat = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-focus") && i+1 < args.length )
+                focus = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-cache") && i+1 < args.length )
+                cacheMB = Long.parseLong( args[++i] );
+            else if( args[i].equals("-cache-file") && i+1 < args.length )
+                cacheFile = args[++i];
+            else if( args[i].equals("-serve") && i+1 < args.length )
+                port = Integer.parseInt( args[++i] );
+            else if( args[i].equals("-pack") && i+1 < args.length )
+                packFile = args[++i];
+            else if( args[i].equals("-unpack") )
+                unpack = true;
+            else if( args[i].equals("-puzzle") && i+1 < args.length )
+                puzzleIndex = Long.parseLong( args[++i] );
+            else
+                fileName = args[i];
         }
-    }
-
-
-    /* Helper function for the printing of Sudoku puzzle.  This function will print
-     * out text, preceded by enough ' ' characters to make sure that the printint out
-     * takes at least width characters.  */
-    void printFixedWidth( String text, int width )
-    {
-        for( int i = 0; i < width - text.length(); i++ )
-            System.out.print( " " );
-        System.out.print( text );
-    }
 
+        if( !Arrays.asList("smart", "backtrack", "mrv", "random", "parallel", "anneal", "dlx", "portfolio").contains(engine) ) {
+            System.out.println("Error: Unknown engine " + engine + ", use smart, backtrack, mrv, random, parallel, anneal, dlx or portfolio.");
+            System.exit(-1);
+        }
 
-    /* The print() function outputs the Sudoku grid to the standard output, using
-     * a bit of extra formatting to make the result clearly readable. */
-    public void print()
-    {
-        // Compute the number of digits necessary to print out each number in the Sudoku puzzle
-        int digits = (int) Math.floor(Math.log(N) / Math.log(10)) + 1;
-
-        // Create a dashed line to separate the boxes 
-        int lineLength = (digits + 1) * N + 2 * SIZE - 3;
-        StringBuffer line = new StringBuffer();
-        for( int lineInit = 0; lineInit < lineLength; lineInit++ )
-            line.append('-');
-
-        // Go through the Grid, printing out its values separated by spaces
-        for( int i = 0; i < N; i++ ) {
-            for( int j = 0; j < N; j++ ) {
-                printFixedWidth( String.valueOf( Grid[i][j] ), digits );
-                // Print the vertical lines between boxes 
-                if( (j < N-1) && ((j+1) % SIZE == 0) )
-                    System.out.print( " |" );
-                System.out.print( " " );
+        if( generate > 0 ) {
+            if( generateSize < 2 || generateSize > 10 ) {
+                System.out.println("Error: Puzzles can be generated for sizes 2 to 10.");
+                System.exit(-1);
             }
-            System.out.println();
+            PuzzleGenerator generator = new PuzzleGenerator( generateSize, threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), seed );
+            generator.holes = holes;
+            generator.run( generate, PuzzleWriter.stdout() );
+            return;
+        }
 
-            // Print the horizontal line between boxes
-            if( (i < N-1) && ((i+1) % SIZE == 0) )
-                System.out.println( line.toString() );
+        SolutionCache cache = null;
+        if( cacheFile != null )
+            cache = new SolutionCache( (cacheMB > 0 ? cacheMB : 64) << 20, cacheFile );
+        else if( cacheMB > 0 )
+            cache = new SolutionCache( cacheMB << 20 );
+
+        if( port > 0 ) {
+            BatchSolver solver = new BatchSolver( threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), engine, rules );
+            solver.cache = cache;
+            solver.countLimit = countLimit;
+            solver.timeoutMillis = timeoutMillis;
+            solver.maxNodes = maxNodes;
+            new SolveServer( port, solver ).run();
+            return;
         }
-    }
 
+        if( unpack ) {
+            if( fileName == null || !PuzzleCorpus.isCorpus( fileName ) ) {
+                System.out.println("Error: -unpack needs a corpus file.");
+                System.exit(-1);
+            }
+            try( PuzzleCorpus corpus = new PuzzleCorpus( fileName ) ) {
+                corpus.unpack( PuzzleWriter.stdout() );
+            }
+            return;
+        }
 
-    /* The main function reads in a Sudoku puzzle from the standard input, 
-     * unless a file name is provided as a run-time argument, in which case the
-     * Sudoku puzzle is loaded from that file.  It then solves the puzzle, and
-     * outputs the completed puzzle to the standard output. */
-    public static void main( String args[] ) throws Exception
-    {
-        InputStream in;
-        if( args.length > 0 ) 
-            in = new FileInputStream( args[0] );
+        // A file is memory mapped, or read as a corpus if it is one, the standard input is read through one buffer
+        PuzzleReader in;
+        if( fileName != null ) 
+            in = PuzzleReader.open( fileName );
         else
-            in = System.in;
+            in = new PuzzleReader( System.in );
+
+        if( packFile != null ) {
+            long startTime = System.nanoTime();
+            long packed = PuzzleCorpus.pack( in, packFile );
+            System.err.println("Packed " + packed + " puzzles into " + packFile + " in " + (System.nanoTime() - startTime)/1e9 + "s");
+            return;
+        }
+
+        if( batch ) {
+            BatchSolver solver = new BatchSolver( threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), engine, rules );
+            solver.stats = stats;
+            solver.cache = cache;
+            solver.countLimit = countLimit;
+            solver.timeoutMillis = timeoutMillis;
+            solver.maxNodes = maxNodes;
+            solver.run( in, PuzzleWriter.stdout() );
+            if( cache != null ) {
+                System.err.println( cache.report() );
+                cache.close();
+            }
+            return;
+        }
 
         // The first number in all Sudoku files must represent the size of the puzzle.  See
-        // the example files for the file format.
-        int puzzleSize = readInteger( in );
-        if( puzzleSize > 100 || puzzleSize < 1 ) {
-            System.out.println("Error: The Sudoku puzzle size must be between 1 and 100.");
+        // the example files for the file format.  A puzzle can also be given on one line.
+        PuzzleReader.Puzzle puzzle = null;
+        try {
+            in.skip( puzzleIndex );
+            puzzle = in.next();
+        } catch( IOException e ) {
+            System.out.println("Error: " + e.getMessage() + ".");
+            System.exit(-1);
+        }
+        if( puzzle == null ) {
+            System.out.println("Error: The input holds no Sudoku puzzle.");
             System.exit(-1);
         }
 
-        Sudoku s = new Sudoku( puzzleSize );
-
-        // read the rest of the Sudoku puzzle
-        s.read( in );
+        Sudoku s = new Sudoku( puzzle.size );
+        s.rules = rules;
+        s.engine = engine;
+        if( threads > 0 )
+            s.threads = threads;
+        s.seeds = seeds;
+        if( stats )
+            s.stats = new SolverStats();
+        s.cache = cache;
+        s.timeoutMillis = timeoutMillis;
+        s.maxNodes = maxNodes;
+        s.cooling = cooling;
+        s.reheat = reheat;
+        s.focus = focus;
+        if( seeded )
+            s.generator = new Random( seed );
+
+        // load the rest of the Sudoku puzzle
+        s.reset( puzzle.grid );
 
         // Solve the puzzle.  We don't currently check to verify that the puzzle can be
         // successfully completed.  You may add that check if you want to, but it is not
         // necessary.
 
-        s.solve();
+        if( countLimit > 0 ) {
+            long startTime = System.nanoTime();
+            int count = s.countSolutions( countLimit );
+            System.out.println("Runtime: " + (System.nanoTime() - startTime)/1e6);
+            if( s.timedOut() )
+                System.out.println("Stopped before the count was complete, found " + count);
+            else
+                System.out.println( describeCount( count, countLimit ) );
+            if( stats )
+                System.out.println( s.stats.toJson() );
+        }
+        else
+            s.solve();
 
         // Print out the (hopefully completed!) puzzle
         s.print();
+        if( cache != null ) {
+            System.err.println( cache.report() );
+            cache.close();
+        }
     }
 }
 
@@ -2,7 +2,7 @@ import java.util.*;
 import java.io.*;
 
 
-class Sudoku
+class SudokuSimpleBacktrack
 {
     /* SIZE is the size parameter of the Sudoku puzzle, and N is the square of the size.  For 
      * a standard Sudoku puzzle, SIZE is 3 and N is 9. */
@@ -38,32 +38,33 @@ class Sudoku
     }
 
     // Find a valid number for the current cell
-    public void find(int row, int col)throws Exception{
+    // Returns true once the grid is solved, false if no number works from this cell on
+    public boolean find(int row, int col){
 
         // If row number exceeds the max row, the grid is solved
-        if (row > N-1)throw new Exception( "Success!" ) ;
+        if (row > N-1) return true;
 
         // If cell is not 0 (or x), continue with the next cell
-        if (Grid[row][col]!=0)findNext(row, col);
-        else {
-            // Guess a valid number for current cell
-            for ( int number = 1; number <= N; number++){
-                if ( checkRow(row, number) && checkCol(col, number) && checkSquare(row, col, number) ){
-                    Grid[row][col] = number;
-                    // Continue with next cell
-                    findNext(row, col);
-                }
+        if (Grid[row][col]!=0) return findNext(row, col);
+
+        // Guess a valid number for current cell
+        for ( int number = 1; number <= N; number++){
+            if ( checkRow(row, number) && checkCol(col, number) && checkSquare(row, col, number) ){
+                Grid[row][col] = number;
+                // Continue with next cell
+                if (findNext(row, col)) return true;
             }
-            Grid[row][col]=0;
         }
+        Grid[row][col]=0;
+        return false;
     }
 
     // Calls find for the next cell
-    public void findNext(int row, int col)throws Exception{
+    public boolean findNext(int row, int col){
         if (col < (N-1)){
-            find(row, col+1);
+            return find(row, col+1);
         } else {
-            find(row+1, 0);
+            return find(row+1, 0);
         }
     }
 
@@ -72,11 +73,12 @@ class Sudoku
     public void solve(){
         // Save the time in order to calculate runtime
         long startTime = System.nanoTime();
-        try{find(0,0);} 
-        catch(Exception e){}
+        boolean solved = find(0,0);
 
         // Print out the running time in MILLISECONDS of this solve() method
         System.out.println("Runtime: " + (System.nanoTime() - startTime)/1e6);
+        if( !solved )
+            System.out.println("No solution found");
     }
 
 
@@ -87,7 +89,7 @@ class Sudoku
     /* Default constructor.  This will initialize all positions to the default 0
      * value.  Use the read() function to load the Sudoku puzzle from a file or
      * the standard input. */
-    public Sudoku( int size )
+    public SudokuSimpleBacktrack( int size )
     {
         SIZE = size;
         N = size*size;
@@ -223,7 +225,7 @@ class Sudoku
             System.exit(-1);
         }
 
-        Sudoku s = new Sudoku( puzzleSize );
+        SudokuSimpleBacktrack s = new SudokuSimpleBacktrack( puzzleSize );
 
         // read the rest of the Sudoku puzzle
         s.read( in );
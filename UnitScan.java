@@ -0,0 +1,86 @@
+import java.util.*;
+import java.lang.reflect.*;
+
+
+/* UnitScan reads the candidates of the N cells of one unit for the rules of Propagator
+ * that look at a whole unit: the hidden pairs and the intersections.  A scan gives, for
+ * every value, the bitset of the positions of the unit where it is still possible, and
+ * the values possible in at least one, two and three cells, accumulated over the cell
+ * masks with OR and AND-NOT (twice |= once & m, once |= m) so that the values on
+ * exactly two cells come out of one expression.  The rules then work on these bitsets
+ * instead of walking the unit again for every value.
+ * This is the scalar kernel, it walks the set bits of every cell.  VectorUnitScan (in
+ * vector/) does the same on whole vectors of cells with jdk.incubator.vector, and is
+ * only picked when its class was compiled and the JVM runs with
+ * --add-modules jdk.incubator.vector: the scan results, and so every solve, are the
+ * same with both kernels. */
+class UnitScan
+{
+	final int N;
+
+	// Positions of every value, bit i of positions[d] set if the i-th cell of the unit can take d+1
+	final int[] positions;
+
+	// Values possible in at least one, two and three cells of the unit
+	int once, twice, thrice;
+
+	UnitScan( int n )
+	{
+		N = n;
+		positions = new int[n];
+	}
+
+	// Scan the unit whose cells are units[base..base+N-1]
+	void scan(int[] cand, int[] units, int base){
+		int o = 0, t = 0, th = 0;
+		Arrays.fill(positions, 0);
+		for (int i=0; i<N; i++) {
+			int m = cand[units[base+i]];
+			th |= t & m;
+			t |= o & m;
+			o |= m;
+			for (; m!=0; m&=m-1) positions[Integer.numberOfTrailingZeros(m)] |= 1<<i;
+		}
+		once = o;
+		twice = t;
+		thrice = th;
+	}
+
+	// Values possible in exactly two cells of the unit, the candidates of a hidden pair
+	int exactlyTwice(){
+		return twice & ~thrice;
+	}
+
+	// Smallest grids the vector kernel is used for, below it a unit is less than one vector
+	static final int VECTOR_MIN_N = 16;
+
+	// Constructor of VectorUnitScan, looked up on the first request, null when it can't be used
+	private static Constructor<?> vectorKernel;
+	private static boolean lookedUp;
+
+	private static synchronized Constructor<?> vectorKernel(){
+		if (!lookedUp) {
+			lookedUp = true;
+			try {
+				vectorKernel = Class.forName("VectorUnitScan").getDeclaredConstructor(int.class);
+			}
+			catch (ReflectiveOperationException | LinkageError e) {
+				// Not compiled, or jdk.incubator.vector isn't in the JVM
+			}
+		}
+		return vectorKernel;
+	}
+
+	// Kernel for units of N cells: the vector one from N=16 when the Vector API is there, the scalar one otherwise
+	static UnitScan create(int n){
+		if (n>=VECTOR_MIN_N && vectorKernel()!=null) {
+			try {
+				return (UnitScan) vectorKernel.newInstance(n);
+			}
+			catch (ReflectiveOperationException e) {
+				// Same results from the scalar kernel
+			}
+		}
+		return new UnitScan(n);
+	}
+}
@@ -0,0 +1,260 @@
+import java.util.*;
+
+
+/* WideCandidates is the candidate state of the grids too big for the int bitsets of
+ * Candidates, from 36x36 (SIZE 6) up to 100x100 (SIZE 10).  The domain of every cell
+ * is W long words (bit d of word d>>6 set if d+1 is possible), laid out one cell after
+ * the other in a single array, with the domain sizes kept next to it.  It works the
+ * way Candidates does: placing a value only visits the row, column and box of the cell,
+ * and the unit counters hand out the hidden singles without a scan.  The trail holds
+ * one int per value removed, so it only grows with the search instead of being sized
+ * for the worst case, and the peer table of Geometry isn't needed: a 100x100 state
+ * takes well under a megabyte. */
+class WideCandidates
+{
+	final int SIZE, N, cells;
+
+	// Words per domain, 1 up to 64 values and 2 above
+	final int W;
+
+	// Value of every cell indexed by row*N+col, 0 if the cell is empty
+	final int[] value;
+
+	// Domain of every cell, cand[cell*W+w], all zero once the cell is solved
+	final long[] cand;
+
+	// Number of values left in the domain of every cell
+	final int[] size;
+
+	// Domain of an empty cell with all N values
+	private final long[] full;
+
+	// Unit tables shared by every state of this size, see Geometry
+	final Geometry geometry;
+	final int[] units, unitsOf;
+
+	// Number of cells of a unit that hold or can still take a value, indexed by unit*N+d
+	final int[] count;
+
+	// Values placed in every unit, placed[unit*W+w]
+	final long[] placed;
+
+	// Track the number of cells solved
+	int numberCellSolved;
+
+	// Set when a cell runs out of values or a value has no cell left in a unit
+	boolean contradiction;
+
+	// Trail of changes, one int per entry: cell*N+d when d+1 left the domain of the cell
+	// and ~(cell*N+d) when d+1 was placed in it
+	int[] trail;
+	int trailSize;
+
+	// Cells whose domain dropped to a single value, waiting to be handed out as naked singles
+	int[] nakedQueue = new int[64];
+	int nakedSize;
+
+	// Units and values (unit*N+d) with a single cell left, waiting to be handed out as hidden singles
+	int[] hiddenQueue = new int[64];
+	int hiddenSize;
+
+	// Unit of the last hidden single handed out
+	int lastHiddenUnit;
+
+	public WideCandidates( int size )
+	{
+		geometry = Geometry.of(size);
+		SIZE = size;
+		N = size*size;
+		cells = N*N;
+		W = (N+63)>>>6;
+		units = geometry.units;
+		unitsOf = geometry.unitsOf;
+		value = new int[cells];
+		cand = new long[cells*W];
+		this.size = new int[cells];
+		count = new int[3*N*N];
+		placed = new long[3*N*W];
+		trail = new int[4*cells];
+		full = new long[W];
+		for (int d=0; d<N; d++) full[d>>>6] |= 1L<<d;
+	}
+
+	// Reset to the given grid, returns false if the givens contradict each other
+	public boolean load(int[][] grid){
+		geometry.checkValues(grid);
+		Arrays.fill(value, 0);
+		for (int cell=0; cell<cells; cell++) System.arraycopy(full, 0, cand, cell*W, W);
+		Arrays.fill(size, N);
+		Arrays.fill(count, N);
+		Arrays.fill(placed, 0);
+		numberCellSolved = 0;
+		contradiction = false;
+		trailSize = 0;
+		nakedSize = 0;
+		hiddenSize = 0;
+		for (int r=0; r<N; r++)
+			for (int c=0; c<N; c++)
+				if (grid[r][c]>0) {
+					int cell = r*N+c;
+					// A given that is no longer possible clashes with an earlier given
+					if (!isCandidate(cell, grid[r][c])) contradiction = true;
+					else place(cell, grid[r][c]);
+				}
+		return !contradiction;
+	}
+
+	// Check if a value k is still possible in an empty cell
+	boolean isCandidate(int cell, int k){
+		assert k>=1 && k<=N : k;
+		return (cand[cell*W + ((k-1)>>>6)] & (1L<<(k-1))) != 0;
+	}
+
+	// Smallest index d>=from with d+1 still possible in the cell, or -1 if there is none
+	int nextValue(int cell, int from){
+		int w = from>>>6;
+		if (w>=W) return -1;
+		long m = cand[cell*W+w] & (-1L << from);
+		while (m==0) {
+			if (++w==W) return -1;
+			m = cand[cell*W+w];
+		}
+		return (w<<6) + Long.numberOfTrailingZeros(m);
+	}
+
+	// Insert k in the cell and remove it from the domains of its row, column and box
+	// Returns false if the placement leads to a contradiction
+	public boolean place(int cell, int k){
+		assert k>=1 && k<=N : k;
+		int d = k-1, w = d>>>6;
+		long bit = 1L<<d;
+		int u0 = unitsOf[cell*3], u1 = unitsOf[cell*3+1], u2 = unitsOf[cell*3+2];
+		push(~(cell*N+d));
+		value[cell] = k;
+		cand[cell*W+w] &= ~bit;
+		size[cell]--;
+		numberCellSolved++;
+		placed[u0*W+w] |= bit;
+		placed[u1*W+w] |= bit;
+		placed[u2*W+w] |= bit;
+		// The cell no longer offers its other values to its units
+		for (int x=0; x<W; x++)
+			for (long m=cand[cell*W+x]; m!=0; m&=m-1) {
+				int other = (x<<6) + Long.numberOfTrailingZeros(m);
+				push(cell*N+other);
+				decrement(u0, other);
+				decrement(u1, other);
+				decrement(u2, other);
+			}
+		for (int x=0; x<W; x++) cand[cell*W+x] = 0;
+		size[cell] = 0;
+		// The peers are the cells of the three units, the ones shared by two units are skipped by the bit test
+		for (int j=0; j<3; j++)
+			for (int i=unitsOf[cell*3+j]*N, end=i+N; i<end; i++) {
+				int p = units[i];
+				if ((cand[p*W+w] & bit) != 0) eliminate(p, d);
+			}
+		return !contradiction;
+	}
+
+	// Remove d+1 from the domain of an empty cell
+	// Returns false if the cell or one of its units runs out of options
+	public boolean eliminate(int cell, int d){
+		int i = cell*W + (d>>>6);
+		long bit = 1L<<d;
+		if ((cand[i] & bit) == 0) return !contradiction;
+		cand[i] &= ~bit;
+		push(cell*N+d);
+		int left = --size[cell];
+		if (left==0) contradiction = true;
+		else if (left==1) {
+			if (nakedSize==nakedQueue.length) nakedQueue = Arrays.copyOf(nakedQueue, 2*nakedSize);
+			nakedQueue[nakedSize++] = cell;
+		}
+		decrement(unitsOf[cell*3], d);
+		decrement(unitsOf[cell*3+1], d);
+		decrement(unitsOf[cell*3+2], d);
+		return !contradiction;
+	}
+
+	// One less cell can take value d+1 in unit u
+	private void decrement(int u, int d){
+		int left = --count[u*N+d];
+		if ((placed[u*W + (d>>>6)] & (1L<<d)) != 0) return;
+		if (left==0) contradiction = true;
+		else if (left==1) {
+			if (hiddenSize==hiddenQueue.length) hiddenQueue = Arrays.copyOf(hiddenQueue, 2*hiddenSize);
+			hiddenQueue[hiddenSize++] = u*N+d;
+		}
+	}
+
+	private void push(int entry){
+		if (trailSize==trail.length) trail = Arrays.copyOf(trail, 2*trail.length);
+		trail[trailSize++] = entry;
+	}
+
+	// Current position in the trail, pass it to undo() to come back to this state
+	public int mark(){
+		return trailSize;
+	}
+
+	// Revert every placement and elimination made since the mark
+	public void undo(int mark){
+		while (trailSize > mark) {
+			int e = trail[--trailSize];
+			int placement = e<0 ? ~e : e;
+			int cell = placement/N, d = placement%N, w = d>>>6;
+			long bit = 1L<<d;
+			cand[cell*W+w] |= bit;
+			size[cell]++;
+			int u0 = unitsOf[cell*3], u1 = unitsOf[cell*3+1], u2 = unitsOf[cell*3+2];
+			if (e<0) {
+				// The other values of the cell were popped before, only the value itself is left
+				placed[u0*W+w] &= ~bit;
+				placed[u1*W+w] &= ~bit;
+				placed[u2*W+w] &= ~bit;
+				value[cell] = 0;
+				numberCellSolved--;
+			}
+			else {
+				count[u0*N+d]++;
+				count[u1*N+d]++;
+				count[u2*N+d]++;
+			}
+		}
+		// Everything pending was deduced after the mark, the state at the mark was already worked through
+		contradiction = false;
+		nakedSize = 0;
+		hiddenSize = 0;
+	}
+
+	// Next naked single as a move cell*N+d, or -1 if there is none left
+	public int nextNakedSingle(){
+		while (nakedSize > 0) {
+			int cell = nakedQueue[--nakedSize];
+			// Skip cells solved or emptied since they were queued
+			if (size[cell]==1) return cell*N + nextValue(cell, 0);
+		}
+		return -1;
+	}
+
+	// Next hidden single as a move cell*N+d, or -1 if there is none left
+	public int nextHiddenSingle(){
+		while (hiddenSize > 0) {
+			int e = hiddenQueue[--hiddenSize];
+			int u = e/N, d = e%N, w = d>>>6;
+			long bit = 1L<<d;
+			if (count[e]!=1 || (placed[u*W+w] & bit) != 0) continue;
+			lastHiddenUnit = u;
+			for (int i=u*N, end=i+N; i<end; i++)
+				if ((cand[units[i]*W+w] & bit) != 0) return units[i]*N + d;
+		}
+		return -1;
+	}
+
+	// Copy the solved cells into a grid
+	public void store(int[][] grid){
+		for (int cell=0; cell<cells; cell++)
+			grid[cell/N][cell%N] = value[cell];
+	}
+}
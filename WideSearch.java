@@ -0,0 +1,170 @@
+import java.util.concurrent.atomic.*;
+
+
+/* WideSearch propagates and searches a WideCandidates state, for the grids too big for
+ * Propagator and MrvSearch.  The propagation places the naked and hidden singles handed
+ * out by the state until there are none left, which costs the visit of the three units
+ * of every value placed, so it stays close to linear in the number of placements.  The
+ * pair and intersection rules sweep every unit and are left out on these sizes.  The
+ * search is the minimum remaining values search of MrvSearch, with the cell, trail
+ * mark and value of every depth on explicit stacks: a search can be thousands of
+ * guesses deep on a 10,000 cell grid. */
+class WideSearch
+{
+	final WideCandidates c;
+	final int N;
+
+	// Singles rules applied by propagate, see Propagator, the other rules are ignored
+	int rules = Propagator.SINGLES;
+
+	// Number of values placed by the singles rules
+	int placements;
+
+	// Number of search nodes explored
+	long nodes;
+
+	// Set from any thread to stop the search, it is checked at every node
+	AtomicBoolean cancelled = new AtomicBoolean();
+
+	// Per rule counters, nodes and backtracks, only updated when attached
+	SolverStats stats;
+
+	// Solutions found by the last search or count, with a copy of the values of the first one
+	int solutions;
+	int[] firstSolution;
+
+	// Deadline and node limit of the search, null for none, and the nodes not yet charged to it
+	Budget budget;
+	private int ticks;
+
+	// Cell, trail mark and last value tried at every depth of the search
+	private final int[] cellStack, markStack, valueStack;
+
+	public WideSearch( WideCandidates candidates )
+	{
+		c = candidates;
+		N = candidates.N;
+		cellStack = new int[c.cells];
+		markStack = new int[c.cells];
+		valueStack = new int[c.cells];
+	}
+
+	// Place every queued naked and hidden single, including the ones they uncover
+	// Returns false if the grid reached a contradiction
+	public boolean propagate(){
+		if (stats!=null) stats.propagations++;
+		while (!c.contradiction) {
+			int move = -1;
+			if ((rules & Propagator.NAKED_SINGLES) != 0) move = c.nextNakedSingle();
+			if (move>=0) {
+				if (stats!=null) stats.nakedSingles++;
+			}
+			else if ((rules & Propagator.HIDDEN_SINGLES) != 0) {
+				move = c.nextHiddenSingle();
+				if (move>=0 && stats!=null) {
+					if (c.lastHiddenUnit<N) stats.hiddenSinglesRow++;
+					else if (c.lastHiddenUnit<2*N) stats.hiddenSinglesColumn++;
+					else stats.hiddenSinglesBox++;
+				}
+			}
+			if (move<0) return true;
+			c.place(move/N, move%N+1);
+			placements++;
+		}
+		return false;
+	}
+
+	// True if another thread stopped the search or the budget ran out, the budget is only charged every interval nodes
+	private boolean stopped(){
+		if (cancelled.get()) return true;
+		if (budget==null) return false;
+		if ((++ticks & budget.mask) == 0) return budget.spend();
+		return budget.exhausted;
+	}
+
+	// Empty cell with the smallest domain, or -1 if the grid is full
+	int pickCell(){
+		int[] size = c.size, value = c.value;
+		int best = -1, bestSize = N+1;
+		// A domain of one can't be beaten
+		for (int cell=0; cell<c.cells && bestSize>1; cell++)
+			if (value[cell]==0 && size[cell] < bestSize) {
+				bestSize = size[cell];
+				best = cell;
+			}
+		return best;
+	}
+
+	// Search a state that has already been propagated, on success the state is left solved
+	// A cancelled search or one out of budget also returns false, check cancelled and the budget to tell them apart
+	public boolean search(){
+		explore(1);
+		return solutions>0;
+	}
+
+	// Count the solutions up to limit, the search stops as soon as limit is reached
+	// The state is left as it was, the first solution is kept in firstSolution
+	public int count(int limit){
+		solutions = 0;
+		int mark = c.mark();
+		if (propagate()) explore(limit);
+		c.undo(mark);
+		return solutions;
+	}
+
+	// Depth first search for limit solutions, stopping on the last one with the state solved
+	// 1. Pick the empty cell with the fewest possible values and push it
+	// 2. Undo the last value tried in the cell on top, insert its next value and propagate
+	// 3. Push the next cell if the grid is still open, pop the cell once it has no value left
+	private void explore(int limit){
+		solutions = 0;
+		if (stopped()) return;
+		node();
+		int cell = pickCell();
+		if (cell<0) {
+			found();
+			return;
+		}
+		int depth = 0;
+		cellStack[0] = cell;
+		markStack[0] = c.mark();
+		valueStack[0] = -1;
+		depth++;
+		while (depth > 0) {
+			int top = depth-1;
+			cell = cellStack[top];
+			if (valueStack[top]>=0) {
+				c.undo(markStack[top]);
+				if (stats!=null) stats.backtracks++;
+			}
+			int d = c.nextValue(cell, valueStack[top]+1);
+			if (d<0) {
+				depth--;
+				continue;
+			}
+			valueStack[top] = d;
+			if (!c.place(cell, d+1) || !propagate()) continue;
+			if (stopped()) return;
+			node();
+			int next = pickCell();
+			if (next<0) {
+				found();
+				if (solutions>=limit) return;
+				continue;
+			}
+			cellStack[depth] = next;
+			markStack[depth] = c.mark();
+			valueStack[depth] = -1;
+			depth++;
+		}
+	}
+
+	private void node(){
+		nodes++;
+		if (stats!=null) stats.nodes++;
+	}
+
+	private void found(){
+		if (solutions++ == 0) firstSolution = c.value.clone();
+	}
+}
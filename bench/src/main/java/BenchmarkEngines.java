@@ -0,0 +1,65 @@
+import sudoku.bench.Engines;
+
+
+/* BenchmarkEngines gives the benchmarks access to the engines of Sudoku and to
+ * SudokuSimpleBacktrack.  Each prepared solver keeps one instance and resets it to the
+ * original puzzle before every solve, the way batch workers reuse their solvers. */
+public class BenchmarkEngines implements Engines
+{
+    public Solver prepare( String engine, String file ) throws Exception
+    {
+        PuzzleReader.Puzzle p = PuzzleReader.open( file ).next();
+        final int size = p.size;
+        final Sudoku s = new Sudoku( size );
+        s.reset( p.grid );
+
+        final int n = size*size;
+        final int[][] puzzle = new int[n][];
+        for( int i = 0; i < n; i++ )
+            puzzle[i] = s.Grid[i].clone();
+
+        if( engine.equals("simple") ) {
+            final SudokuSimpleBacktrack b = new SudokuSimpleBacktrack( size );
+            return new Solver() {
+                public boolean solve() {
+                    for( int i = 0; i < n; i++ )
+                        System.arraycopy( puzzle[i], 0, b.Grid[i], 0, n );
+                    return b.find( 0, 0 );
+                }
+            };
+        }
+
+        s.engine = engine;
+        return new Solver() {
+            public boolean solve() {
+                s.reset( puzzle );
+                return s.solveWithEngine();
+            }
+        };
+    }
+
+    public Scanner prepareScan( String kernel, String file ) throws Exception
+    {
+        PuzzleReader.Puzzle p = PuzzleReader.open( file ).next();
+        final Candidates c = new Candidates( p.size );
+        c.load( p.grid );
+        // The state the pairs and intersections see in a solve: the singles are placed first
+        new Propagator( c, Propagator.SINGLES ).propagate();
+
+        final int n = c.N;
+        final UnitScan scan = kernel.equals("vector") ? UnitScan.create( n ) : new UnitScan( n );
+        // Every puzzle of UnitScanBenchmark is big enough for the vector kernel, falling back means the module is missing
+        if( kernel.equals("vector") && scan.getClass() == UnitScan.class )
+            throw new IllegalStateException( "VectorUnitScan could not be loaded, the forked JVM needs --add-modules jdk.incubator.vector" );
+        return new Scanner() {
+            public int scanUnits() {
+                int sum = 0;
+                for( int u = 0; u < 3*n; u++ ) {
+                    scan.scan( c.cand, c.units, u*n );
+                    sum += scan.exactlyTwice() ^ scan.positions[u%n];
+                }
+                return sum;
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package sudoku.bench;
+
+
+/* Engines is the bridge between the benchmarks and the solver.  The solver classes live
+ * in the default package, which a named package can't import, so the implementation
+ * (BenchmarkEngines, in the default package of this module) is loaded by name. */
+public interface Engines
+{
+    // A puzzle loaded into an engine, ready to be solved again and again
+    interface Solver
+    {
+        // Solve the original puzzle once, returns false if no solution was found
+        boolean solve();
+    }
+
+    // Load a puzzle file into an engine: smart, backtrack, mrv, random, parallel, anneal, dlx, portfolio
+    // or simple (SudokuSimpleBacktrack)
+    Solver prepare( String engine, String file ) throws Exception;
+
+    // The candidates of a puzzle after its singles, ready to be scanned again and again
+    interface Scanner
+    {
+        // Scan every unit once, returns a checksum of the results
+        int scanUnits();
+    }
+
+    // Load a puzzle file for a UnitScan kernel: scalar or vector (VectorUnitScan)
+    Scanner prepareScan( String kernel, String file ) throws Exception;
+}
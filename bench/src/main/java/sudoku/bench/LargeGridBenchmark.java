@@ -0,0 +1,57 @@
+package sudoku.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/* LargeGridBenchmark is SolverBenchmark for the bundled puzzles from 16x16 to 100x100.
+ * The row by row backtracks (backtrack, simple) don't finish on the hard 16x16 and
+ * 25x25 puzzles and randomGuess has no bound on any of them, so only the engines that
+ * end in a bounded time are in the matrix. */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LargeGridBenchmark
+{
+    @Param({ "smart", "mrv", "parallel", "anneal", "dlx", "portfolio" })
+    public String engine;
+
+    @Param({ "veryHard4x4.txt", "veryHard5x5.txt", "generated6x6.txt", "generated7x7.txt", "generated8x8.txt",
+             "generated9x9.txt", "generated10x10.txt" })
+    public String puzzle;
+
+    private Engines.Solver solver;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        Engines engines = (Engines) Class.forName( "BenchmarkEngines" ).getDeclaredConstructor().newInstance();
+        File file = new File( System.getProperty( "sudoku.dir", ".." ), puzzle );
+        solver = engines.prepare( engine, file.getPath() );
+    }
+
+    @Benchmark
+    public boolean solve()
+    {
+        return solver.solve();
+    }
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+            .include( LargeGridBenchmark.class.getSimpleName() )
+            .addProfiler( GCProfiler.class )
+            .build();
+        new Runner( options ).run();
+    }
+}
@@ -0,0 +1,57 @@
+package sudoku.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/* SolverBenchmark measures every engine on the bundled 9x9 puzzles, as the average time
+ * and as sampled percentiles of a single solve.  The puzzles are read from the directory
+ * in the sudoku.dir system property, the root of the repository by default.  Run with
+ * "-prof gc" for the allocation rate, main() adds it by itself.  The bigger puzzles are
+ * in LargeGridBenchmark, with the engines that finish on them. */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark
+{
+    @Param({ "smart", "backtrack", "mrv", "random", "parallel", "anneal", "dlx", "portfolio", "simple" })
+    public String engine;
+
+    @Param({ "veryEasy3x3.txt", "easy3x3.txt", "medium3x3.txt", "hard3x3.txt", "veryHard3x3.txt" })
+    public String puzzle;
+
+    private Engines.Solver solver;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        Engines engines = (Engines) Class.forName( "BenchmarkEngines" ).getDeclaredConstructor().newInstance();
+        File file = new File( System.getProperty( "sudoku.dir", ".." ), puzzle );
+        solver = engines.prepare( engine, file.getPath() );
+    }
+
+    @Benchmark
+    public boolean solve()
+    {
+        return solver.solve();
+    }
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+            .include( SolverBenchmark.class.getSimpleName() )
+            .addProfiler( GCProfiler.class )
+            .build();
+        new Runner( options ).run();
+    }
+}
@@ -0,0 +1,54 @@
+package sudoku.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/* UnitScanBenchmark compares the scalar and the vector UnitScan kernels on the 16x16
+ * and 25x25 puzzles: one operation scans the 3N units of the puzzle once its singles are
+ * placed, the way a sweep of Propagator does.  The forked JVM gets the incubator module
+ * of the Vector API, so the vector kernel can be loaded. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class UnitScanBenchmark
+{
+    @Param({ "scalar", "vector" })
+    public String kernel;
+
+    @Param({ "veryHard4x4.txt", "veryHard5x5.txt" })
+    public String puzzle;
+
+    private Engines.Scanner scanner;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        Engines engines = (Engines) Class.forName( "BenchmarkEngines" ).getDeclaredConstructor().newInstance();
+        File file = new File( System.getProperty( "sudoku.dir", ".." ), puzzle );
+        scanner = engines.prepareScan( kernel, file.getPath() );
+    }
+
+    @Benchmark
+    public int scanUnits()
+    {
+        return scanner.scanUnits();
+    }
+
+    public static void main( String[] args ) throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+            .include( UnitScanBenchmark.class.getSimpleName() )
+            .build();
+        new Runner( options ).run();
+    }
+}
@@ -0,0 +1,79 @@
+import jdk.incubator.vector.*;
+
+
+/* VectorUnitScan is the UnitScan kernel written with the Vector API, for the 16x16 and
+ * 25x25 grids where the masks of a unit fill one or two vectors of 16 ints (AVX-512)
+ * or two to four of 8 (AVX2).  The masks are copied out of the grid in position order,
+ * then:
+ * 1. once, twice and thrice are accumulated lane by lane over the vectors of masks, as
+ *    the scalar kernel does cell by cell, and the lanes are folded into one by halves:
+ *    the two halves hold different cells, so twice also gets once & once of the other
+ * 2. The positions are computed with one lane per value instead: every mask is
+ *    broadcast, shifted right by the value of the lane, and its low bit moved to the
+ *    position of the cell, so a vector of positions takes one step per open cell
+ *    whatever the number of candidates
+ * The gather through the unit table, the bitset of a vector compare and the reads of
+ * single lanes were all tried and measured slower than the scalar kernel on JDK 17,
+ * they are left out.
+ * It is compiled apart from the other sources, which must build without the incubator
+ * module:
+ *     javac --add-modules jdk.incubator.vector -cp <solver classes> -d <dir> vector/VectorUnitScan.java
+ * and used when <dir> is on the class path of a JVM started with the same option. */
+final class VectorUnitScan extends UnitScan
+{
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+	// Values of one vector of positions, as a bitset shifted down to bit 0
+	private static final int VALUE_LANES = (1<<LANES)-1;
+
+	// Candidate masks of the unit in position order, zero past N up to a whole number of vectors
+	private final int[] masks;
+
+	// Value index of every lane of the position vectors, 0..N-1 then up to a whole number of vectors
+	private final int[] values;
+
+	VectorUnitScan( int n )
+	{
+		super(n);
+		int vectors = (n+LANES-1)/LANES;
+		masks = new int[vectors*LANES];
+		values = new int[vectors*LANES];
+		for (int d=0; d<values.length; d++) values[d] = d;
+	}
+
+	@Override
+	void scan(int[] cand, int[] units, int base){
+		for (int i=0; i<N; i++) masks[i] = cand[units[base+i]];
+
+		IntVector o = IntVector.zero(SPECIES), t = o, th = o;
+		for (int i=0; i<masks.length; i+=LANES) {
+			IntVector m = IntVector.fromArray(SPECIES, masks, i);
+			th = th.or(t.and(m));
+			t = t.or(o.and(m));
+			o = o.or(m);
+		}
+		// Fold the upper half of the lanes onto the lower half until lane 0 holds the whole unit
+		for (int half=LANES/2; half>0; half/=2) {
+			IntVector o2 = o.slice(half), t2 = t.slice(half), th2 = th.slice(half);
+			th = th.or(th2).or(t.and(o2)).or(o.and(t2));
+			t = t.or(t2).or(o.and(o2));
+			o = o.or(o2);
+		}
+		once = o.lane(0);
+		twice = t.lane(0);
+		thrice = th.lane(0);
+
+		// Solved cells and values without a cell add nothing, most of a unit late in a solve
+		for (int d=0; d<N; d+=LANES) {
+			IntVector p = IntVector.zero(SPECIES);
+			if (((once >>> d) & VALUE_LANES) != 0) {
+				IntVector shift = IntVector.fromArray(SPECIES, values, d);
+				for (int i=0; i<N; i++)
+					p = p.or(IntVector.broadcast(SPECIES, masks[i]).lanewise(VectorOperators.LSHR, shift).and(1).lanewise(VectorOperators.LSHL, i));
+			}
+			if (d+LANES <= N) p.intoArray(positions, d);
+			else p.intoArray(positions, d, SPECIES.indexInRange(d, N));
+		}
+	}
+}